@@ -31,4 +31,31 @@ public class AccessDeniedException extends PrivilegeException {
 	public AccessDeniedException(String msg) {
 		super(msg);
 	}
+
+	/**
+	 * Constructor for denials which are expected to happen often, e.g. when validating the privileges of a user, in
+	 * which case filling in the stack trace is not worth its cost
+	 * 
+	 * @param msg
+	 *            detail on why and where access was denied
+	 * @param writableStackTrace
+	 *            false if the stack trace is not to be filled in
+	 */
+	public AccessDeniedException(String msg, boolean writableStackTrace) {
+		super(msg, writableStackTrace);
+	}
+
+	/**
+	 * Constructor for denials which are expected to happen often, where the message is only formatted when it is read
+	 * 
+	 * @param messageKey
+	 *            the key of the message in the {@link ch.eitchnet.privilege.i18n.PrivilegeMessages}
+	 * @param messageArgs
+	 *            the arguments to format into the message
+	 * @param writableStackTrace
+	 *            false if the stack trace is not to be filled in
+	 */
+	public AccessDeniedException(String messageKey, Object[] messageArgs, boolean writableStackTrace) {
+		super(messageKey, messageArgs, writableStackTrace);
+	}
 }
@@ -15,6 +15,11 @@
  */
 package ch.eitchnet.privilege.base;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import ch.eitchnet.privilege.i18n.PrivilegeMessages;
+
 /**
  * Main {@link RuntimeException} thrown if something goes wrong in Privilege
  * 
@@ -24,6 +29,10 @@ public class PrivilegeException extends RuntimeException {
 
 	private static final long serialVersionUID = 1L;
 
+	private final String messageKey;
+	private transient Object[] messageArgs;
+	private String message;
+
 	/**
 	 * Default constructor
 	 * 
@@ -32,6 +41,7 @@ public class PrivilegeException extends RuntimeException {
 	 */
 	public PrivilegeException(String string) {
 		super(string);
+		this.messageKey = null;
 	}
 
 	/**
@@ -44,5 +54,61 @@ public class PrivilegeException extends RuntimeException {
 	 */
 	public PrivilegeException(String string, Throwable t) {
 		super(string, t);
+		this.messageKey = null;
+	}
+
+	/**
+	 * Constructor for exceptions which are thrown often and thus may be created without a stack trace
+	 * 
+	 * @param string
+	 *            message to go with the exception
+	 * @param writableStackTrace
+	 *            false if the stack trace is not to be filled in
+	 */
+	protected PrivilegeException(String string, boolean writableStackTrace) {
+		super(string, null, false, writableStackTrace);
+		this.messageKey = null;
+	}
+
+	/**
+	 * Constructor for exceptions which are thrown often, and of which the message is often not read. The message is
+	 * only formatted from the given message key of the {@link PrivilegeMessages} when it is first read
+	 * 
+	 * @param messageKey
+	 *            the key of the message in the {@link PrivilegeMessages}
+	 * @param messageArgs
+	 *            the arguments to format into the message
+	 * @param writableStackTrace
+	 *            false if the stack trace is not to be filled in
+	 */
+	protected PrivilegeException(String messageKey, Object[] messageArgs, boolean writableStackTrace) {
+		super(null, null, false, writableStackTrace);
+		this.messageKey = messageKey;
+		this.messageArgs = messageArgs;
+	}
+
+	/**
+	 * @return the key of the message in the {@link PrivilegeMessages}, or null if this exception was created with an
+	 *         already formatted message
+	 */
+	public String getMessageKey() {
+		return this.messageKey;
+	}
+
+	@Override
+	public String getMessage() {
+		if (this.messageKey == null)
+			return super.getMessage();
+
+		// formatting twice concurrently does no harm
+		if (this.message == null)
+			this.message = PrivilegeMessages.format(this.messageKey, this.messageArgs);
+		return this.message;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		// the arguments need not be serializable, so the message is formatted before serializing
+		getMessage();
+		out.defaultWriteObject();
 	}
 }
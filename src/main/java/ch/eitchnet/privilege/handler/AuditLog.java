@@ -0,0 +1,423 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.handler;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.model.PrivilegeContext;
+
+/**
+ * <p>
+ * The {@link AuditLog} records authentication and authorization events and writes them asynchronously to a line
+ * delimited file, one tab separated event per line
+ * </p>
+ * 
+ * <p>
+ * The events are passed from the request threads to a single background writer through a preallocated ring buffer,
+ * so that recording an event neither allocates, nor locks, nor does any I/O. A request thread claims the next slot
+ * with a compare and set, fills in the slot and publishes it by writing the slot's sequence. The writer reads the slots
+ * in order, writes the events and frees the slots again. If the ring buffer is full, because the writer can not keep
+ * up, then the event is either dropped and counted, or the request thread waits until a slot is free, depending on the
+ * configuration
+ * </p>
+ * 
+ * <p>
+ * When the file reaches its maximum size it is rotated, i.e. the file is renamed by appending .1 to its name, existing
+ * rotated files are shifted by one, and the oldest file is deleted if the maximum number of files is reached
+ * </p>
+ * 
+ * <p>
+ * Note: This is an internal object which is not to be passed to clients
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class AuditLog {
+
+	private static final Logger logger = LoggerFactory.getLogger(AuditLog.class);
+
+	/**
+	 * the default number of slots in the ring buffer
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	/**
+	 * the default maximum size of a file in bytes
+	 */
+	public static final long DEFAULT_MAX_FILE_SIZE = 10L * 1024L * 1024L;
+
+	/**
+	 * the default maximum number of files, including the current file
+	 */
+	public static final int DEFAULT_MAX_FILES = 5;
+
+	/**
+	 * the time in nanoseconds the writer waits for new events, and a blocked request thread waits for a free slot
+	 */
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+	/**
+	 * the time in nanoseconds the writer waits on stop for events of request threads which claimed a slot but have not
+	 * yet published it. A slot which is published later is written once the log is started again
+	 */
+	private static final long STOP_GRACE_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+
+	/**
+	 * the time in milliseconds to wait on stop for the writer to finish
+	 */
+	private static final long STOP_TIMEOUT = 10000L;
+
+	/**
+	 * The audited events
+	 */
+	public enum Event {
+		AUTHENTICATED, AUTHENTICATION_FAILED, SESSION_INVALIDATED, SYSTEM_ACTION, SYSTEM_ACTION_DENIED, ACCESS_GRANTED, ACCESS_DENIED;
+	}
+
+	/**
+	 * A slot of the ring buffer. The fields are written by the request thread which claimed the slot, before the slot
+	 * is published by writing its sequence
+	 */
+	private static final class Slot {
+		private volatile long sequence;
+		private long timestamp;
+		private Event event;
+		private String username;
+		private String sessionId;
+		private String name;
+		private String value;
+	}
+
+	private final File file;
+	private final boolean blockWhenFull;
+	private final long maxFileSize;
+	private final int maxFiles;
+
+	private final Slot[] slots;
+	private final int mask;
+	private final AtomicLong nextSequence;
+	private final AtomicLong writtenSequence;
+	private final AtomicLong droppedEvents;
+
+	private volatile boolean running;
+	private Thread writerThread;
+
+	private Writer writer;
+	private long fileSize;
+	private final SimpleDateFormat dateFormat;
+
+	/**
+	 * Default constructor
+	 * 
+	 * @param file
+	 *            the file to which the events are written
+	 * @param bufferSize
+	 *            the number of events which can be buffered, rounded up to the next power of two
+	 * @param blockWhenFull
+	 *            true if a request thread is to wait for a free slot when the buffer is full, false if the event is to
+	 *            be dropped
+	 * @param maxFileSize
+	 *            the size in bytes after which the file is rotated
+	 * @param maxFiles
+	 *            the maximum number of files to keep, including the current file
+	 */
+	public AuditLog(File file, int bufferSize, boolean blockWhenFull, long maxFileSize, int maxFiles) {
+		if (bufferSize <= 0 || bufferSize > (1 << 30) || maxFileSize <= 0L || maxFiles <= 0) {
+			String msg = "Illegal audit log configuration: bufferSize={0} maxFileSize={1} maxFiles={2}"; //$NON-NLS-1$
+			msg = MessageFormat.format(msg, Integer.toString(bufferSize), Long.toString(maxFileSize),
+					Integer.toString(maxFiles));
+			throw new PrivilegeException(msg);
+		}
+
+		this.file = file;
+		this.blockWhenFull = blockWhenFull;
+		this.maxFileSize = maxFileSize;
+		this.maxFiles = maxFiles;
+
+		int size = 1;
+		while (size < bufferSize) {
+			size <<= 1;
+		}
+		this.slots = new Slot[size];
+		for (int i = 0; i < size; i++) {
+			this.slots[i] = new Slot();
+		}
+		this.mask = size - 1;
+		this.nextSequence = new AtomicLong();
+		this.writtenSequence = new AtomicLong();
+		this.droppedEvents = new AtomicLong();
+
+		this.dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ"); //$NON-NLS-1$
+	}
+
+	/**
+	 * @return the number of events which were dropped because the buffer was full
+	 */
+	public long getDroppedEvents() {
+		return this.droppedEvents.get();
+	}
+
+	/**
+	 * Records an event of the session of the given {@link PrivilegeContext}
+	 * 
+	 * @param event
+	 *            the {@link Event} to record
+	 * @param privilegeContext
+	 *            the {@link PrivilegeContext} of the session
+	 * @param name
+	 *            the name of the privilege or action, may be null
+	 * @param value
+	 *            the value of the privilege, or a detail on the event, may be null
+	 */
+	public void record(Event event, PrivilegeContext privilegeContext, String name, String value) {
+		record(event, privilegeContext.getUsername(), privilegeContext.getCertificate().getSessionId(), name, value);
+	}
+
+	/**
+	 * Records an event. The values are only referenced and are converted in the writer thread
+	 * 
+	 * @param event
+	 *            the {@link Event} to record
+	 * @param username
+	 *            the username of the user, may be null
+	 * @param sessionId
+	 *            the session id of the user, may be null
+	 * @param name
+	 *            the name of the privilege or action, may be null
+	 * @param value
+	 *            the value of the privilege, or a detail on the event, may be null
+	 */
+	public void record(Event event, String username, String sessionId, String name, String value) {
+
+		long sequence = claim();
+		if (sequence < 0L)
+			return;
+
+		Slot slot = this.slots[(int) (sequence & this.mask)];
+		slot.timestamp = System.currentTimeMillis();
+		slot.event = event;
+		slot.username = username;
+		slot.sessionId = sessionId;
+		slot.name = name;
+		slot.value = value;
+
+		// publish the slot to the writer
+		slot.sequence = sequence + 1L;
+	}
+
+	private long claim() {
+		int capacity = this.slots.length;
+
+		// a slot is only claimed once it is free, as a claimed slot which is never published would stop the writer
+		while (true) {
+			long sequence = this.nextSequence.get();
+			if (sequence - this.writtenSequence.get() >= capacity) {
+				if (!this.blockWhenFull || !this.running) {
+					this.droppedEvents.incrementAndGet();
+					return -1L;
+				}
+				LockSupport.parkNanos(PARK_NANOS);
+				continue;
+			}
+			if (this.nextSequence.compareAndSet(sequence, sequence + 1L))
+				return sequence;
+		}
+	}
+
+	/**
+	 * Starts the background thread which writes the events
+	 */
+	public synchronized void start() {
+		if (this.writerThread != null)
+			return;
+
+		this.running = true;
+		this.writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeEvents();
+			}
+		}, "PrivilegeAuditLog"); //$NON-NLS-1$
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * Stops the background thread after it has written all events which were recorded before, and closes the file
+	 */
+	public synchronized void stop() {
+		if (this.writerThread == null)
+			return;
+
+		this.running = false;
+		LockSupport.unpark(this.writerThread);
+		try {
+			this.writerThread.join(STOP_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (this.writerThread.isAlive())
+			logger.warn("The audit log writer did not stop in time, the last events might not be written"); //$NON-NLS-1$
+		this.writerThread = null;
+	}
+
+	private void writeEvents() {
+		try {
+			openFile();
+			long stopDeadline = 0L;
+			while (true) {
+				if (writeAvailableEvents() > 0)
+					continue;
+
+				// nothing more to write at the moment, so make the events visible in the file
+				this.writer.flush();
+				if (!this.running) {
+
+					// wait shortly for claimed slots, which are published as soon as the request threads are scheduled
+					if (this.writtenSequence.get() == this.nextSequence.get())
+						break;
+					long now = System.nanoTime();
+					if (stopDeadline == 0L)
+						stopDeadline = now + STOP_GRACE_NANOS;
+					else if (now - stopDeadline >= 0L)
+						break;
+				}
+				LockSupport.parkNanos(PARK_NANOS);
+			}
+		} catch (IOException e) {
+			String msg = "Failed to write the audit log {0}, no more events are written!"; //$NON-NLS-1$
+			logger.error(MessageFormat.format(msg, this.file.getAbsolutePath()), e);
+			this.running = false;
+		} finally {
+			closeFile();
+		}
+	}
+
+	private int writeAvailableEvents() throws IOException {
+		int written = 0;
+		long sequence = this.writtenSequence.get();
+		while (true) {
+			Slot slot = this.slots[(int) (sequence & this.mask)];
+			if (slot.sequence != sequence + 1L)
+				return written;
+
+			writeEvent(slot);
+
+			// release the references before freeing the slot
+			slot.event = null;
+			slot.username = null;
+			slot.sessionId = null;
+			slot.name = null;
+			slot.value = null;
+
+			sequence++;
+			this.writtenSequence.lazySet(sequence);
+			written++;
+		}
+	}
+
+	private void writeEvent(Slot slot) throws IOException {
+		StringBuilder sb = new StringBuilder(128);
+		sb.append(this.dateFormat.format(new Date(slot.timestamp)));
+		sb.append('\t').append(slot.event.name());
+		appendField(sb, slot.username);
+		appendField(sb, slot.sessionId);
+		appendField(sb, slot.name);
+		appendField(sb, slot.value);
+		sb.append('\n');
+
+		if (this.fileSize > 0L && this.fileSize + sb.length() > this.maxFileSize)
+			rotate();
+
+		this.writer.write(sb.toString());
+		this.fileSize += sb.length();
+	}
+
+	private static void appendField(StringBuilder sb, String value) {
+		sb.append('\t');
+		if (value == null) {
+			sb.append('-');
+			return;
+		}
+
+		// the events must stay on one line and the fields must stay separated
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			sb.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+		}
+	}
+
+	private void openFile() throws IOException {
+		File parent = this.file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException(MessageFormat.format("Could not create directory {0}", parent)); //$NON-NLS-1$
+		}
+
+		this.fileSize = this.file.length();
+		this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, true),
+				StandardCharsets.UTF_8));
+	}
+
+	private void closeFile() {
+		if (this.writer == null)
+			return;
+		try {
+			this.writer.close();
+		} catch (IOException e) {
+			logger.error("Failed to close the audit log", e); //$NON-NLS-1$
+		}
+		this.writer = null;
+	}
+
+	private void rotate() throws IOException {
+		this.writer.close();
+		this.writer = null;
+
+		// shift the rotated files by one, deleting the oldest
+		File oldest = rotatedFile(this.maxFiles - 1);
+		if (oldest.exists() && !oldest.delete())
+			throw new IOException(MessageFormat.format("Could not delete {0}", oldest)); //$NON-NLS-1$
+		for (int i = this.maxFiles - 2; i >= 0; i--) {
+			File from = rotatedFile(i);
+			if (from.exists() && !from.renameTo(rotatedFile(i + 1)))
+				throw new IOException(MessageFormat.format("Could not rename {0}", from)); //$NON-NLS-1$
+		}
+
+		openFile();
+	}
+
+	private File rotatedFile(int index) {
+		if (index == 0)
+			return this.file;
+		return new File(this.file.getPath() + "." + index); //$NON-NLS-1$
+	}
+}
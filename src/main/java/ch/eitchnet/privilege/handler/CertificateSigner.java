@@ -0,0 +1,258 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.handler;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.helper.TokenGenerator;
+import ch.eitchnet.privilege.model.Certificate;
+
+/**
+ * <p>
+ * The {@link CertificateSigner} creates and verifies authentication tokens for {@link Certificate}s which are signed
+ * using an HMAC, so that any node holding the same key can verify a {@link Certificate} without having the session in
+ * its {@link SessionRegistry}
+ * </p>
+ * 
+ * <p>
+ * The signed token has the form <code>loginTime.roleSetVersion.signature</code> where the signature is calculated over
+ * the session id, the username, the login time and the role set version. As the login time is signed, the absolute
+ * expiry of the session can be validated on every node. The role set version is a SHA-256 digest of the user's sorted
+ * role names, so that a token is not accepted anymore once the roles of the user changed
+ * </p>
+ * 
+ * <p>
+ * Sessions invalidated on this node, or which expired on this node as they were idle, are remembered until their
+ * absolute expiry so that they are not restored again. This revocation is local to the node: a node which has not seen
+ * the invalidation or the idle session still accepts the signed token until it expires, unless the node shares a
+ * {@link SessionStore} with the revoking node and already knew the session. Deployments which need logouts and idle
+ * timeouts to take effect on all nodes immediately must therefore keep the absolute timeout short or not use signed
+ * certificates
+ * </p>
+ * 
+ * <p>
+ * Note: This is an internal object which is not to be passed to clients
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class CertificateSigner {
+
+	/**
+	 * the HMAC algorithm used to sign the tokens
+	 */
+	private static final String HMAC_ALGORITHM = "HmacSHA256"; //$NON-NLS-1$
+
+	/**
+	 * the digest algorithm used for the role set version
+	 */
+	private static final String DIGEST_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+	private static final char SEPARATOR = '.';
+
+	private final SecretKeySpec key;
+	private final ThreadLocal<Mac> mac;
+	private final long absoluteTimeout;
+
+	private final ConcurrentHashMap<String, Long> revokedSessions;
+	private volatile long nextRevocationPrune;
+
+	/**
+	 * Default constructor
+	 * 
+	 * @param signingKey
+	 *            the secret key with which the tokens are signed, must be the same on all nodes
+	 * @param absoluteTimeout
+	 *            the time in milliseconds after login after which a signed token is not accepted anymore
+	 */
+	public CertificateSigner(String signingKey, long absoluteTimeout) {
+
+		if (signingKey == null || signingKey.length() < 16) {
+			throw new PrivilegeException("The certificate signing key must be at least 16 characters long!"); //$NON-NLS-1$
+		}
+		if (absoluteTimeout <= 0) {
+			throw new PrivilegeException("Signed certificates require an absolute session timeout!"); //$NON-NLS-1$
+		}
+
+		this.key = new SecretKeySpec(signingKey.getBytes(UTF_8), HMAC_ALGORITHM);
+		this.absoluteTimeout = absoluteTimeout;
+		this.revokedSessions = new ConcurrentHashMap<String, Long>();
+		this.mac = new ThreadLocal<Mac>() {
+			@Override
+			protected Mac initialValue() {
+				try {
+					Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+					mac.init(CertificateSigner.this.key);
+					return mac;
+				} catch (GeneralSecurityException e) {
+					String msg = MessageFormat.format("Failed to initialize {0}", HMAC_ALGORITHM); //$NON-NLS-1$
+					throw new PrivilegeException(msg, e);
+				}
+			}
+		};
+
+		// fail early if the algorithm is not available
+		this.mac.get();
+	}
+
+	/**
+	 * Returns the role set version for the given role names, i.e. a digest of the sorted role names, so that different
+	 * sets of roles practically never have the same version
+	 * 
+	 * @param roles
+	 *            the role names of a user
+	 * 
+	 * @return the role set version
+	 */
+	public static String getRoleSetVersion(Iterable<String> roles) {
+
+		// the version must be independent of the order of the roles
+		List<String> roleNames = new ArrayList<String>();
+		for (String role : roles) {
+			roleNames.add(role);
+		}
+		Collections.sort(roleNames);
+
+		try {
+			MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+			for (String roleName : roleNames) {
+				digest.update(roleName.getBytes(UTF_8));
+				digest.update((byte) 0);
+			}
+			return TokenGenerator.toUrlSafeString(digest.digest());
+		} catch (GeneralSecurityException e) {
+			String msg = MessageFormat.format("Failed to initialize {0}", DIGEST_ALGORITHM); //$NON-NLS-1$
+			throw new PrivilegeException(msg, e);
+		}
+	}
+
+	/**
+	 * Creates a signed authentication token for a new session
+	 * 
+	 * @param sessionId
+	 *            the session id of the new {@link Certificate}
+	 * @param username
+	 *            the username of the new {@link Certificate}
+	 * @param loginTime
+	 *            the login time of the new {@link Certificate}
+	 * @param roleSetVersion
+	 *            the role set version of the user as returned by {@link #getRoleSetVersion(Iterable)}
+	 * 
+	 * @return the signed authentication token
+	 */
+	public String sign(String sessionId, String username, long loginTime, String roleSetVersion) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(loginTime);
+		sb.append(SEPARATOR);
+		sb.append(roleSetVersion);
+		String payload = sb.toString();
+
+		sb.append(SEPARATOR);
+		sb.append(signature(sessionId, username, payload));
+		return sb.toString();
+	}
+
+	/**
+	 * Verifies the authentication token of the given {@link Certificate}, i.e. that the token was signed with this
+	 * signer's key for the certificate's session id and username, that the session has not expired and has not been
+	 * revoked and that the role set version is still the given one
+	 * 
+	 * @param certificate
+	 *            the {@link Certificate} to verify
+	 * @param roleSetVersion
+	 *            the current role set version of the certificate's user
+	 * @param now
+	 *            the current time in milliseconds
+	 * 
+	 * @return the login time of the verified certificate, or -1 if the certificate could not be verified
+	 */
+	public long verify(Certificate certificate, String roleSetVersion, long now) {
+
+		String authToken = certificate.getAuthToken();
+		int loginTimeEnd = authToken.indexOf(SEPARATOR);
+		int payloadEnd = authToken.lastIndexOf(SEPARATOR);
+		if (loginTimeEnd <= 0 || payloadEnd <= loginTimeEnd)
+			return -1;
+
+		// the signature must be verified before the payload is trusted
+		String payload = authToken.substring(0, payloadEnd);
+		String signature = signature(certificate.getSessionId(), certificate.getUsername(), payload);
+		if (!TokenGenerator.constantTimeEquals(signature, authToken.substring(payloadEnd + 1)))
+			return -1;
+
+		long loginTime;
+		try {
+			loginTime = Long.parseLong(payload.substring(0, loginTimeEnd));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+
+		if (!payload.substring(loginTimeEnd + 1).equals(roleSetVersion))
+			return -1;
+		if (loginTime + this.absoluteTimeout <= now)
+			return -1;
+		if (this.revokedSessions.containsKey(certificate.getSessionId()))
+			return -1;
+
+		return loginTime;
+	}
+
+	/**
+	 * Revokes the session of the given {@link Certificate} on this node, so that its signed token is not accepted
+	 * anymore
+	 * 
+	 * @param certificate
+	 *            the {@link Certificate} of the session to revoke
+	 */
+	public void revoke(Certificate certificate) {
+		long now = System.currentTimeMillis();
+		this.revokedSessions.put(certificate.getSessionId(), certificate.getLoginTime() + this.absoluteTimeout);
+
+		// revocations are only needed until the token expires anyway
+		if (now >= this.nextRevocationPrune) {
+			this.nextRevocationPrune = now + this.absoluteTimeout;
+			Iterator<Entry<String, Long>> iter = this.revokedSessions.entrySet().iterator();
+			while (iter.hasNext()) {
+				if (iter.next().getValue().longValue() <= now)
+					iter.remove();
+			}
+		}
+	}
+
+	private String signature(String sessionId, String username, String payload) {
+		Mac mac = this.mac.get();
+		mac.update(sessionId.getBytes(UTF_8));
+		mac.update((byte) 0);
+		mac.update(username.getBytes(UTF_8));
+		mac.update((byte) 0);
+		return TokenGenerator.toUrlSafeString(mac.doFinal(payload.getBytes(UTF_8)));
+	}
+}
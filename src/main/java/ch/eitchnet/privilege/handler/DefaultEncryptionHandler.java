@@ -18,7 +18,6 @@ package ch.eitchnet.privilege.handler;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.text.MessageFormat;
 import java.util.Map;
 
@@ -26,13 +25,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.helper.TokenGenerator;
 import ch.eitchnet.privilege.helper.XmlConstants;
 import ch.eitchnet.utils.helper.StringHelper;
 
 /**
  * <p>
- * This default {@link EncryptionHandler} creates tokens using a {@link SecureRandom} object. Hashing is done by using
- * {@link MessageDigest} and the configured algorithm which is passed in the parameters
+ * This default {@link EncryptionHandler} creates URL safe tokens using the {@link TokenGenerator}. Hashing is done by
+ * using {@link MessageDigest} and the configured algorithm which is passed in the parameters
  * </p>
  * 
  * Required parameters:
@@ -49,11 +49,6 @@ public class DefaultEncryptionHandler implements EncryptionHandler {
 	 */
 	private static final Logger logger = LoggerFactory.getLogger(DefaultEncryptionHandler.class);
 
-	/**
-	 * The {@link SecureRandom} which is used to create new tokens
-	 */
-	private SecureRandom secureRandom;
-
 	/**
 	 * The configured hash algorithm for this instance
 	 */
@@ -85,17 +80,12 @@ public class DefaultEncryptionHandler implements EncryptionHandler {
 
 	@Override
 	public String nextToken() {
-		byte[] bytes = new byte[16];
-		this.secureRandom.nextBytes(bytes);
-		String randomString = new String(bytes);
-		return randomString;
+		return TokenGenerator.nextToken();
 	}
 
 	@Override
 	public void initialize(Map<String, String> parameterMap) {
 
-		this.secureRandom = new SecureRandom();
-
 		// get hash algorithm parameters
 		this.hashAlgorithm = parameterMap.get(XmlConstants.XML_PARAM_HASH_ALGORITHM);
 		if (this.hashAlgorithm == null || this.hashAlgorithm.isEmpty()) {
@@ -15,32 +15,44 @@
  */
 package ch.eitchnet.privilege.handler;
 
+import java.io.File;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ch.eitchnet.privilege.base.AccessDeniedException;
 import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.helper.TokenGenerator;
 import ch.eitchnet.privilege.model.Certificate;
 import ch.eitchnet.privilege.model.IPrivilege;
 import ch.eitchnet.privilege.model.PrivilegeContext;
+import ch.eitchnet.privilege.model.PrivilegeIds;
 import ch.eitchnet.privilege.model.PrivilegeRep;
 import ch.eitchnet.privilege.model.RoleRep;
+import ch.eitchnet.privilege.model.RoleSetView;
+import ch.eitchnet.privilege.model.SessionDataMap;
 import ch.eitchnet.privilege.model.UserRep;
 import ch.eitchnet.privilege.model.UserState;
 import ch.eitchnet.privilege.model.internal.PrivilegeImpl;
 import ch.eitchnet.privilege.model.internal.Role;
+import ch.eitchnet.privilege.model.internal.RoleHierarchy;
 import ch.eitchnet.privilege.model.internal.User;
+import ch.eitchnet.privilege.policy.CompilingPolicy;
+import ch.eitchnet.privilege.policy.DeterministicPolicy;
 import ch.eitchnet.privilege.policy.PrivilegePolicy;
+import ch.eitchnet.privilege.policy.StatefulPolicy;
 
 /**
  * <p>
@@ -51,9 +63,15 @@ import ch.eitchnet.privilege.policy.PrivilegePolicy;
  * <ul>
  * <li>any methods which change the model are first validated by checking if the certificate is for an admin user by
  * calling {@link #assertIsPrivilegeAdmin(Certificate)}</li>
- * <li>all model requests are delegated to the configured {@link PrivilegeHandler}, except for the session id to
- * {@link Certificate} map, no model data is kept in this implementation. This also means that to return the
+ * <li>all model requests are delegated to the configured {@link PrivilegeHandler}, except for the sessions which are
+ * kept in a {@link SessionRegistry}, no model data is kept in this implementation. This also means that to return the
  * representation objects, for every new model query, a new representation object is created</li>
+ * <li>the {@link SessionRegistry} is a local cache of the sessions in the configured {@link SessionStore}. A session
+ * which is not in the {@link SessionRegistry} is restored from the {@link SessionStore}, so that a {@link SessionStore}
+ * shared by multiple nodes allows to use a session on any of these nodes</li>
+ * <li>if a signing key is configured, then the certificates are signed by a {@link CertificateSigner}, so that a
+ * session which is not known to this node is restored from the certificate, e.g. when requests are load balanced over
+ * multiple nodes</li>
  * <li>when creating new users, or editing users then a null password is understood as no password set</li>
  * <li>Password requirements are simple: Non null and non empty/length 0</li>
  * </ul>
@@ -67,25 +85,167 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 	 */
 	private static final String PARAM_AUTO_PERSIST_ON_PASSWORD_CHANGE = "autoPersistOnPasswordChange"; //$NON-NLS-1$
 
+	/**
+	 * configuration parameter to define the time in seconds after which an unused session expires, 0 for never
+	 */
+	private static final String PARAM_SESSION_IDLE_TIMEOUT = "sessionIdleTimeout"; //$NON-NLS-1$
+
+	/**
+	 * configuration parameter to define the time in seconds after login after which a session expires, 0 for never
+	 */
+	private static final String PARAM_SESSION_ABSOLUTE_TIMEOUT = "sessionAbsoluteTimeout"; //$NON-NLS-1$
+
+	/**
+	 * configuration parameter to define the maximum number of sessions per user, 0 for unlimited
+	 */
+	private static final String PARAM_MAX_SESSIONS_PER_USER = "maxSessionsPerUser"; //$NON-NLS-1$
+
+	/**
+	 * configuration parameter to define the maximum size in bytes of the session data map of a session
+	 */
+	private static final String PARAM_MAX_SESSION_DATA_BYTES = "maxSessionDataBytes"; //$NON-NLS-1$
+
+	/**
+	 * configuration parameter to define the number of decisions of {@link DeterministicPolicy}s which are cached per
+	 * distinct set of roles, 0 for no caching
+	 */
+	private static final String PARAM_DECISION_CACHE_SIZE = "privilegeDecisionCacheSize"; //$NON-NLS-1$
+
+	/**
+	 * configuration parameter to define the file to which the sessions are written on {@link #destroy()} and from
+	 * which they are restored on initialization. Sessions invalidated after the last written snapshot are restored if
+	 * the process is not stopped using {@link #destroy()}
+	 */
+	private static final String PARAM_SESSION_SNAPSHOT_FILE = "sessionSnapshotFile"; //$NON-NLS-1$
+
+	/**
+	 * configuration parameter to define the interval in seconds in which the sessions are written to the snapshot file,
+	 * 0 for only on {@link #destroy()}
+	 */
+	private static final String PARAM_SESSION_SNAPSHOT_INTERVAL = "sessionSnapshotInterval"; //$NON-NLS-1$
+
+	/**
+	 * configuration parameter to define the secret key with which the certificates are signed, if not set, then the
+	 * certificates are not signed and are only valid on the node which created them
+	 */
+	private static final String PARAM_CERTIFICATE_SIGNING_KEY = "certificateSigningKey"; //$NON-NLS-1$
+
+	/**
+	 * configuration parameter to define the file to which authentications and authorization decisions are written, if
+	 * not set, then nothing is audited
+	 */
+	private static final String PARAM_AUDIT_LOG_FILE = "auditLogFile"; //$NON-NLS-1$
+
+	/**
+	 * configuration parameter to define the number of audit events which are buffered until they are written
+	 */
+	private static final String PARAM_AUDIT_LOG_BUFFER_SIZE = "auditLogBufferSize"; //$NON-NLS-1$
+
+	/**
+	 * configuration parameter to define what happens to audit events when the buffer is full, either drop or block
+	 */
+	private static final String PARAM_AUDIT_LOG_WHEN_FULL = "auditLogWhenFull"; //$NON-NLS-1$
+
+	/**
+	 * configuration parameter to define the size in bytes after which the audit log file is rotated
+	 */
+	private static final String PARAM_AUDIT_LOG_MAX_FILE_SIZE = "auditLogMaxFileSize"; //$NON-NLS-1$
+
+	/**
+	 * configuration parameter to define the number of audit log files which are kept, including the current file
+	 */
+	private static final String PARAM_AUDIT_LOG_MAX_FILES = "auditLogMaxFiles"; //$NON-NLS-1$
+
 	/**
 	 * slf4j logger
 	 */
 	protected static final Logger logger = LoggerFactory.getLogger(DefaultPrivilegeHandler.class);
 
 	/**
-	 * last assigned id for the {@link Certificate}s
+	 * Registry keeping a reference to all active sessions
+	 */
+	private SessionRegistry sessionRegistry;
+
+	/**
+	 * Store of all active sessions, from which sessions unknown to the {@link SessionRegistry} are restored
+	 */
+	private SessionStore sessionStore;
+
+	/**
+	 * Evicts the sessions from the {@link SessionRegistry} which have expired
+	 */
+	private SessionExpiryWheel sessionExpiryWheel;
+
+	/**
+	 * Signs and verifies the certificates, null if the certificates are not signed
+	 */
+	private CertificateSigner certificateSigner;
+
+	/**
+	 * Writes the sessions to a snapshot file, null if no snapshot is configured
+	 */
+	private SessionSnapshot sessionSnapshot;
+
+	/**
+	 * Records authentications and authorization decisions, null if nothing is audited
+	 */
+	private AuditLog auditLog;
+
+	/**
+	 * the version of the user model, which is incremented whenever a user or a role is changed. A
+	 * {@link PrivilegeContext} is built with the version read before its user was read, and is outdated if its user or
+	 * a role changed in a later version, so that outdated {@link PrivilegeContext}s are detected without having to get
+	 * the user on every validation of a certificate
+	 */
+	private final AtomicLong modelVersion = new AtomicLong();
+
+	/**
+	 * the version of the user model in which a role was last changed
+	 */
+	private volatile long roleModelVersion;
+
+	/**
+	 * the version of the user model in which a role was last changed, by role name, so that a {@link PrivilegeContext}
+	 * which is outdated by the change of a role of another user is only marked as being up to date
+	 */
+	private final ConcurrentHashMap<String, Long> roleModelVersions = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * the version of the user model in which a user was last changed, by username, so that a change to a user only
+	 * outdates the {@link PrivilegeContext}s of this user
+	 */
+	private final ConcurrentHashMap<String, Long> userModelVersions = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * the maximum number of sessions per user, 0 for unlimited
+	 */
+	private int maxSessionsPerUser;
+
+	/**
+	 * the maximum size in bytes of the session data map of a session
+	 */
+	private long maxSessionDataBytes = SessionDataMap.DEFAULT_MAX_BYTES;
+
+	/**
+	 * the number of decisions cached per session, 0 for no caching
+	 */
+	private int decisionCacheSize;
+
+	/**
+	 * Registry of the {@link PrivilegePolicy}s, which are shared by all {@link PrivilegeContext}s
 	 */
-	private long lastSessionId;
+	private PolicyRegistry policyRegistry;
 
 	/**
-	 * Map keeping a reference to all active sessions
+	 * The effective privileges of all roles, including the inherited privileges. It is replaced whenever a role changes
 	 */
-	private Map<String, PrivilegeContext> privilegeContextMap;
+	private volatile RoleHierarchy roleHierarchy;
 
 	/**
-	 * Map of {@link PrivilegePolicy} classes
+	 * Lock held while a role is changed, so that concurrent changes of roles do not lose each other's changes in the
+	 * {@link RoleHierarchy}
 	 */
-	private Map<String, Class<PrivilegePolicy>> policyMap;
+	private final Object roleLock = new Object();
 
 	/**
 	 * The persistence handler is used for getting objects and saving changes
@@ -277,7 +437,7 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 		validatePolicies(role);
 
 		// delegate to persistence handler
-		this.persistenceHandler.addOrReplaceRole(role);
+		replaceRole(role);
 	}
 
 	/**
@@ -309,6 +469,9 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 			// delegate to persistence handler
 			this.persistenceHandler.addOrReplaceUser(user);
 
+			// the user's sessions must reflect the new user
+			refreshSessions(user);
+
 		} finally {
 			clearPassword(password);
 		}
@@ -332,7 +495,7 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 
 		// validate that policy exists if needed
 		String policy = privilegeRep.getPolicy();
-		if (policy != null && !this.policyMap.containsKey(policy)) {
+		if (policy != null && !this.policyRegistry.containsPolicy(policy)) {
 			String msg = "Policy {0} for Privilege {1} does not exist"; //$NON-NLS-1$
 			msg = MessageFormat.format(msg, policy, privilegeRep.getName());
 			throw new PrivilegeException(msg);
@@ -340,6 +503,7 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 
 		// create new role with the additional privilege
 		IPrivilege newPrivilege = new PrivilegeImpl(privilegeRep);
+		compileRules(newPrivilege);
 		// copy existing privileges
 		Set<String> existingPrivilegeNames = role.getPrivilegeNames();
 		Map<String, IPrivilege> privilegeMap = new HashMap<String, IPrivilege>(existingPrivilegeNames.size() + 1);
@@ -350,10 +514,10 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 		// add new one
 		privilegeMap.put(newPrivilege.getName(), newPrivilege);
 
-		Role newRole = new Role(role.getName(), privilegeMap);
+		Role newRole = new Role(role.getName(), role.getParentRoleNames(), privilegeMap);
 
 		// delegate role replacement to persistence handler
-		this.persistenceHandler.addOrReplaceRole(newRole);
+		replaceRole(newRole);
 	}
 
 	@Override
@@ -391,6 +555,9 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 
 		// delegate user replacement to persistence handler
 		this.persistenceHandler.addOrReplaceUser(newUser);
+
+		// the user's sessions must reflect the new user
+		refreshSessions(newUser);
 	}
 
 	@Override
@@ -421,10 +588,10 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 		}
 
 		// create new role
-		Role newRole = new Role(role.getName(), newPrivileges);
+		Role newRole = new Role(role.getName(), role.getParentRoleNames(), newPrivileges);
 
 		// delegate user replacement to persistence handler
-		this.persistenceHandler.addOrReplaceRole(newRole);
+		replaceRole(newRole);
 	}
 
 	@Override
@@ -433,8 +600,15 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 		// validate who is doing this
 		assertIsPrivilegeAdmin(certificate);
 
-		// delegate role removal to persistence handler
-		Role removedRole = this.persistenceHandler.removeRole(roleName);
+		// delegate role removal to persistence handler, a role which is still extended by other roles may not be removed
+		Role removedRole;
+		synchronized (this.roleLock) {
+			RoleHierarchy newRoleHierarchy = this.roleHierarchy.withoutRole(roleName);
+			removedRole = this.persistenceHandler.removeRole(roleName);
+			this.roleHierarchy = newRoleHierarchy;
+			if (removedRole != null)
+				refreshRoleSessions(Collections.singleton(roleName));
+		}
 
 		if (removedRole == null)
 			return null;
@@ -471,6 +645,9 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 
 		// delegate user replacement to persistence handler
 		this.persistenceHandler.addOrReplaceUser(newUser);
+
+		// the user's sessions must reflect the new user
+		refreshSessions(newUser);
 	}
 
 	@Override
@@ -486,6 +663,9 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 		if (removedUser == null)
 			return null;
 
+		// a removed user may not have any sessions
+		invalidateSessions(username);
+
 		// return user rep if it was removed
 		return removedUser.asUserRep();
 
@@ -509,6 +689,9 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 
 		// delegate user replacement to persistence handler
 		this.persistenceHandler.addOrReplaceUser(newUser);
+
+		// the user's sessions must reflect the new user
+		refreshSessions(newUser);
 	}
 
 	@Override
@@ -529,6 +712,9 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 
 		// delegate user replacement to persistence handler
 		this.persistenceHandler.addOrReplaceUser(newUser);
+
+		// the user's sessions must reflect the new user
+		refreshSessions(newUser);
 	}
 
 	/**
@@ -602,6 +788,9 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 
 		// delegate user replacement to persistence handler
 		this.persistenceHandler.addOrReplaceUser(newUser);
+
+		// the user's sessions must reflect the new user
+		refreshSessions(newUser);
 	}
 
 	/**
@@ -623,6 +812,7 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 			}
 
 			// check the password
+			long modelVersion = this.modelVersion.get();
 			User user = checkCredentialsAndUserState(username, password);
 
 			// validate user has at least one role
@@ -632,27 +822,39 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 						MessageFormat.format("User {0} does not have any roles defined!", username)); //$NON-NLS-1$
 			}
 
-			// get 2 auth tokens
-			String authToken = this.encryptionHandler.convertToHash(this.encryptionHandler.nextToken());
-
 			// get next session id
 			String sessionId = nextSessionId();
+			long loginTime = System.currentTimeMillis();
+
+			// get an auth token, which is signed if the certificates are to be valid on other nodes as well
+			String authToken;
+			if (this.certificateSigner == null) {
+				authToken = this.encryptionHandler.nextToken();
+			} else {
+				String roleSetVersion = CertificateSigner.getRoleSetVersion(userRoles);
+				authToken = this.certificateSigner.sign(sessionId, username, loginTime, roleSetVersion);
+			}
 
 			// create a new certificate, with details of the user
-			certificate = new Certificate(sessionId, System.currentTimeMillis(), username, user.getFirstname(),
+			certificate = new Certificate(sessionId, loginTime, username, user.getFirstname(),
 					user.getLastname(), authToken, user.getLocale(), new HashMap<String, String>(user.getProperties()));
 
-			PrivilegeContext privilegeContext = buildPrivilegeContext(certificate, user);
-			this.privilegeContextMap.put(sessionId, privilegeContext);
+			PrivilegeContext privilegeContext = buildPrivilegeContext(certificate, user, modelVersion);
+			this.sessionStore.store(certificate);
+			this.sessionRegistry.put(privilegeContext);
+			this.sessionExpiryWheel.schedule(privilegeContext);
+			if (this.maxSessionsPerUser > 0)
+				enforceSessionLimit(privilegeContext);
 
-			// log
-			DefaultPrivilegeHandler.logger.info(MessageFormat.format(
-					"User {0} authenticated: {1}", username, certificate)); //$NON-NLS-1$
+			// log, the certificate is only formatted if info is enabled
+			DefaultPrivilegeHandler.logger.info("User {} authenticated: {}", username, certificate); //$NON-NLS-1$
+			if (this.auditLog != null)
+				this.auditLog.record(AuditLog.Event.AUTHENTICATED, privilegeContext, null, null);
 
 		} catch (RuntimeException e) {
-			String msg = "User {0} Failed to authenticate: {1}"; //$NON-NLS-1$
-			msg = MessageFormat.format(msg, username, e.getMessage());
-			DefaultPrivilegeHandler.logger.error(msg);
+			DefaultPrivilegeHandler.logger.error("User {} Failed to authenticate: {}", username, e.getMessage()); //$NON-NLS-1$
+			if (this.auditLog != null)
+				this.auditLog.record(AuditLog.Event.AUTHENTICATION_FAILED, username, null, null, e.getMessage());
 			throw e;
 		} finally {
 			clearPassword(password);
@@ -721,31 +923,103 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 	 * 
 	 * @param certificate
 	 * @param user
+	 * @param modelVersion
+	 *            the model version read before the user was read
 	 * 
 	 * @return
 	 */
-	private PrivilegeContext buildPrivilegeContext(Certificate certificate, User user) {
+	private PrivilegeContext buildPrivilegeContext(Certificate certificate, User user, long modelVersion) {
+
+		((SessionDataMap) certificate.getSessionDataMap()).setMaxBytes(this.maxSessionDataBytes);
+
+		UserRep userRep = user.asUserRep();
+		RoleSetView roleSetView = getRoleSetView(user.getRoles());
+		Map<String, PrivilegePolicy> statefulPolicies = newStatefulPolicies(roleSetView,
+				Collections.<String, PrivilegePolicy> emptyMap());
+		PrivilegeContext privilegeContext = new PrivilegeContext(userRep, certificate, roleSetView, statefulPolicies,
+				modelVersion, this.auditLog);
+		return privilegeContext;
+	}
+
+	/**
+	 * Returns the {@link RoleSetView} of the given roles, which is shared by all users with the same roles. It is
+	 * created and cached in the current {@link RoleHierarchy} if it does not exist yet
+	 * 
+	 * @param userRoles
+	 *            the names of the roles of a user
+	 * 
+	 * @return the {@link RoleSetView} of the given roles
+	 */
+	private RoleSetView getRoleSetView(Set<String> userRoles) {
+		RoleHierarchy roleHierarchy = this.roleHierarchy;
+		List<String> roleSetKey = RoleHierarchy.getRoleSetKey(userRoles);
+		RoleSetView roleSetView = roleHierarchy.getRoleSetView(roleSetKey);
+		if (roleSetView != null)
+			return roleSetView;
 
-		Set<String> userRoles = user.getRoles();
 		Map<String, IPrivilege> privileges = new HashMap<String, IPrivilege>();
 		Map<String, PrivilegePolicy> policies = new HashMap<String, PrivilegePolicy>();
+		collectPrivileges(roleHierarchy, roleSetKey, privileges, policies);
+		roleSetView = new RoleSetView(privileges, policies, this.decisionCacheSize);
+		return roleHierarchy.addRoleSetView(roleSetKey, roleSetView);
+	}
+
+	/**
+	 * Returns the instances of the {@link StatefulPolicy}s of the given {@link RoleSetView} for a single
+	 * {@link PrivilegeContext}, as these may not be shared between {@link PrivilegeContext}s
+	 * 
+	 * @param roleSetView
+	 *            the {@link RoleSetView} of the {@link PrivilegeContext}
+	 * @param existingPolicies
+	 *            the instances which the {@link PrivilegeContext} already has and which are kept, so that their state is
+	 *            not lost when the roles change
+	 * 
+	 * @return the instances of the {@link StatefulPolicy}s by their name
+	 */
+	private Map<String, PrivilegePolicy> newStatefulPolicies(RoleSetView roleSetView,
+			Map<String, PrivilegePolicy> existingPolicies) {
+		Set<String> policyNames = roleSetView.getStatefulPolicyNames();
+		if (policyNames.isEmpty())
+			return existingPolicies;
+
+		Map<String, PrivilegePolicy> statefulPolicies = new HashMap<String, PrivilegePolicy>(existingPolicies);
+		for (String policyName : policyNames) {
+			if (!statefulPolicies.containsKey(policyName))
+				statefulPolicies.put(policyName, this.policyRegistry.getPolicy(policyName));
+		}
+		return statefulPolicies;
+	}
+
+	/**
+	 * Collects the {@link IPrivilege}s of the given roles, including the inherited privileges, and their
+	 * {@link PrivilegePolicy}s. For privileges with the same name, the first role wins
+	 * 
+	 * @param roleHierarchy
+	 *            the {@link RoleHierarchy} from which to read the privileges of the roles
+	 * @param roleNames
+	 *            the names of the roles of a user, in the order of their precedence
+	 * @param privileges
+	 *            the map to which the privileges are added by their name
+	 * @param policies
+	 *            the map to which the policies are added by their name
+	 */
+	private void collectPrivileges(RoleHierarchy roleHierarchy, List<String> roleNames,
+			Map<String, IPrivilege> privileges, Map<String, PrivilegePolicy> policies) {
+
+		// get a cache of the privileges and policies for this user, the privileges of the roles include the inherited
+		for (String roleName : roleNames) {
+			Map<String, IPrivilege> rolePrivileges = roleHierarchy.getPrivileges(roleName);
+			if (rolePrivileges == null) {
+				String msg = MessageFormat.format("Role {0} does not exist!", roleName); //$NON-NLS-1$
+				throw new PrivilegeException(msg);
+			}
 
-		// get a cache of the privileges and policies for this user
-		for (String roleName : userRoles) {
-			Role role = this.persistenceHandler.getRole(roleName);
-			Set<String> privilegeNames = role.getPrivilegeNames();
-			for (String privilegeName : privilegeNames) {
+			for (IPrivilege privilege : rolePrivileges.values()) {
 
 				// cache the privilege
+				String privilegeName = privilege.getName();
 				if (privileges.containsKey(privilegeName))
 					continue;
-
-				IPrivilege privilege = role.getPrivilege(privilegeName);
-				if (privilege == null) {
-					String msg = "The Privilege {0} does not exist for role {1}"; //$NON-NLS-1$
-					msg = MessageFormat.format(msg, privilegeName, roleName);
-					throw new PrivilegeException(msg);
-				}
 				privileges.put(privilegeName, privilege);
 
 				// cache the policy for the privilege
@@ -753,7 +1027,7 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 				if (policies.containsKey(policyName))
 					continue;
 
-				PrivilegePolicy policy = getPolicy(policyName);
+				PrivilegePolicy policy = this.policyRegistry.getPolicy(policyName);
 				if (policy == null) {
 					String msg = "The Policy {0} does not exist for Privilege {1}"; //$NON-NLS-1$
 					msg = MessageFormat.format(msg, policyName, privilegeName);
@@ -762,10 +1036,6 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 				policies.put(policyName, policy);
 			}
 		}
-
-		UserRep userRep = user.asUserRep();
-		PrivilegeContext privilegeContext = new PrivilegeContext(userRep, certificate, privileges, policies);
-		return privilegeContext;
 	}
 
 	@Override
@@ -775,41 +1045,310 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 		isCertificateValid(certificate);
 
 		// remove registration
-		PrivilegeContext privilegeContext = this.privilegeContextMap.remove(certificate.getSessionId());
+		this.sessionStore.remove(certificate.getSessionId());
+		PrivilegeContext privilegeContext = this.sessionRegistry.remove(certificate.getSessionId());
+
+		// a signed certificate must not be restored again
+		if (this.certificateSigner != null)
+			this.certificateSigner.revoke(certificate);
 
 		// return true if object was really removed
 		boolean loggedOut = privilegeContext != null;
-		if (loggedOut)
-			DefaultPrivilegeHandler.logger
-					.info(MessageFormat.format("User {0} logged out.", certificate.getUsername())); //$NON-NLS-1$
-		else
+		if (loggedOut) {
+			DefaultPrivilegeHandler.logger.info("User {} logged out.", certificate.getUsername()); //$NON-NLS-1$
+			if (this.auditLog != null)
+				this.auditLog.record(AuditLog.Event.SESSION_INVALIDATED, privilegeContext, null, null);
+		} else
 			DefaultPrivilegeHandler.logger.warn("User already logged out!"); //$NON-NLS-1$
 		return loggedOut;
 	}
 
+	@Override
+	public int getActiveSessionCount(Certificate certificate, String username) {
+
+		// validate who is doing this
+		assertIsPrivilegeAdmin(certificate);
+
+		return this.sessionRegistry.getSessions(username).size();
+	}
+
+	@Override
+	public long getSessionDataBytes(Certificate certificate, String username) {
+
+		// validate who is doing this
+		assertIsPrivilegeAdmin(certificate);
+
+		long bytes = 0L;
+		for (PrivilegeContext privilegeContext : this.sessionRegistry.getSessions(username)) {
+			bytes += ((SessionDataMap) privilegeContext.getCertificate().getSessionDataMap()).getByteSize();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Invalidates all sessions of the user with the given username, e.g. because the user was removed
+	 * 
+	 * @param username
+	 *            the username of the user for which the sessions are to be invalidated
+	 */
+	private void invalidateSessions(String username) {
+		nextUserModelVersion(username);
+		for (PrivilegeContext privilegeContext : this.sessionRegistry.getSessions(username)) {
+			removeSession(privilegeContext);
+		}
+	}
+
+	/**
+	 * Removes the session of the given {@link PrivilegeContext} from the {@link SessionRegistry} and the
+	 * {@link SessionStore}
+	 * 
+	 * @param privilegeContext
+	 *            the {@link PrivilegeContext} of the session to remove
+	 */
+	private void removeSession(PrivilegeContext privilegeContext) {
+		Certificate sessionCertificate = privilegeContext.getCertificate();
+		this.sessionStore.remove(sessionCertificate.getSessionId());
+		if (this.certificateSigner != null)
+			this.certificateSigner.revoke(sessionCertificate);
+		if (this.sessionRegistry.remove(privilegeContext)) {
+			String msg = "Invalidated session {} of user {}"; //$NON-NLS-1$
+			logger.info(msg, sessionCertificate.getSessionId(), sessionCertificate.getUsername());
+		}
+	}
+
+	/**
+	 * Makes sure that the user of the given new session does not have more than the configured maximum number of
+	 * sessions, by invalidating the least recently used sessions of the user. No lock is held, so that concurrent logins
+	 * of the same user might leave the user with fewer sessions than the maximum
+	 * 
+	 * @param newContext
+	 *            the {@link PrivilegeContext} of the new session, which is never invalidated
+	 */
+	private void enforceSessionLimit(PrivilegeContext newContext) {
+
+		List<PrivilegeContext> sessions = this.sessionRegistry.getSessions(newContext.getUsername());
+		int nrOfExceedingSessions = sessions.size() - this.maxSessionsPerUser;
+		if (nrOfExceedingSessions <= 0)
+			return;
+
+		sessions.remove(newContext);
+		Collections.sort(sessions, new Comparator<PrivilegeContext>() {
+			@Override
+			public int compare(PrivilegeContext ctx1, PrivilegeContext ctx2) {
+				long lastAccess1 = ctx1.getCertificate().getLastAccess();
+				long lastAccess2 = ctx2.getCertificate().getLastAccess();
+				return lastAccess1 < lastAccess2 ? -1 : (lastAccess1 == lastAccess2 ? 0 : 1);
+			}
+		});
+
+		for (int i = 0; i < nrOfExceedingSessions && i < sessions.size(); i++) {
+			removeSession(sessions.get(i));
+		}
+	}
+
+	/**
+	 * Rebuilds the {@link PrivilegeContext}s of all sessions of the given {@link User}, so that changes to the user are
+	 * effective immediately. If the user may not have sessions anymore, then the sessions are invalidated
+	 * 
+	 * @param user
+	 *            the changed {@link User}
+	 */
+	private void refreshSessions(User user) {
+
+		UserState userState = user.getUserState();
+		if (userState != UserState.ENABLED && userState != UserState.SYSTEM) {
+			invalidateSessions(user.getUsername());
+			return;
+		}
+
+		long modelVersion = nextUserModelVersion(user.getUsername());
+		for (PrivilegeContext privilegeContext : this.sessionRegistry.getSessions(user.getUsername())) {
+			PrivilegeContext newContext = buildPrivilegeContext(privilegeContext.getCertificate(), user,
+					modelVersion);
+			if (this.sessionRegistry.replace(privilegeContext, newContext))
+				this.sessionExpiryWheel.schedule(newContext);
+		}
+	}
+
+	/**
+	 * Increments the version of the user model for a change of the user with the given username, so that only the
+	 * {@link PrivilegeContext}s of this user are outdated
+	 * 
+	 * @param username
+	 *            the username of the changed user
+	 * 
+	 * @return the new version of the user model
+	 */
+	private long nextUserModelVersion(String username) {
+		long modelVersion = this.modelVersion.incrementAndGet();
+
+		// never replace the version of a concurrent later change
+		Long newVersion = Long.valueOf(modelVersion);
+		while (true) {
+			Long userModelVersion = this.userModelVersions.putIfAbsent(username, newVersion);
+			if (userModelVersion == null || userModelVersion.longValue() >= modelVersion
+					|| this.userModelVersions.replace(username, userModelVersion, newVersion))
+				return modelVersion;
+		}
+	}
+
+	/**
+	 * Returns true if the user or a role changed since the given {@link PrivilegeContext} was built
+	 * 
+	 * @param privilegeContext
+	 *            the {@link PrivilegeContext} to check
+	 * @param roleModelVersion
+	 *            the version of the user model in which a role was last changed
+	 * 
+	 * @return true if the {@link PrivilegeContext} needs to be rebuilt
+	 */
+	private boolean isOutdated(PrivilegeContext privilegeContext, long roleModelVersion) {
+		return privilegeContext.getModelVersion() < roleModelVersion || isUserOutdated(privilegeContext);
+	}
+
+	/**
+	 * Returns true if the user changed since the given {@link PrivilegeContext} was built
+	 * 
+	 * @param privilegeContext
+	 *            the {@link PrivilegeContext} to check
+	 * 
+	 * @return true if the {@link PrivilegeContext} needs to be rebuilt from the user
+	 */
+	private boolean isUserOutdated(PrivilegeContext privilegeContext) {
+		Long userModelVersion = this.userModelVersions.get(privilegeContext.getUsername());
+		return userModelVersion != null && privilegeContext.getModelVersion() < userModelVersion.longValue();
+	}
+
+	/**
+	 * Marks the given outdated {@link PrivilegeContext} as being up to date with the given version in which a role was
+	 * last changed, but only if neither its user nor one of its roles changed since it was built, i.e. only roles of
+	 * other users changed
+	 * 
+	 * @param privilegeContext
+	 *            the outdated {@link PrivilegeContext}
+	 * @param roleModelVersion
+	 *            the version of the user model in which a role was last changed, read before the versions of the roles
+	 * 
+	 * @return true if the {@link PrivilegeContext} was marked as up to date, false if it needs to be rebuilt
+	 */
+	private boolean markUpToDate(PrivilegeContext privilegeContext, long roleModelVersion) {
+		if (isUserOutdated(privilegeContext))
+			return false;
+
+		long modelVersion = privilegeContext.getModelVersion();
+		for (String roleName : privilegeContext.getUserRep().getRoles()) {
+			Long version = this.roleModelVersions.get(roleName);
+			if (version != null && modelVersion < version.longValue())
+				return false;
+		}
+
+		privilegeContext.refresh(roleModelVersion);
+		return true;
+	}
+
 	@Override
 	public void isCertificateValid(Certificate certificate) {
+		validateCertificate(certificate);
+	}
+
+	/**
+	 * Validates the given {@link Certificate} as described in {@link #isCertificateValid(Certificate)} and returns the
+	 * {@link PrivilegeContext} of its session, so that callers need not look up the session or the user again
+	 * 
+	 * @param certificate
+	 *            the {@link Certificate} to validate
+	 * 
+	 * @return the current {@link PrivilegeContext} of the session
+	 * 
+	 * @throws PrivilegeException
+	 *             if the {@link Certificate} is not valid
+	 */
+	private PrivilegeContext validateCertificate(Certificate certificate) throws PrivilegeException {
 
 		// certificate  must not be null
 		if (certificate == null)
 			throw new PrivilegeException("Certificate may not be null!"); //$NON-NLS-1$
 
 		// first see if a session exists for this certificate
-		PrivilegeContext privilegeContext = this.privilegeContextMap.get(certificate.getSessionId());
+		PrivilegeContext privilegeContext = this.sessionRegistry.get(certificate.getSessionId());
+		if (privilegeContext == null)
+			privilegeContext = restoreStoredSession(certificate);
+		if (privilegeContext == null && this.certificateSigner != null)
+			privilegeContext = restoreSignedSession(certificate);
 		if (privilegeContext == null) {
 			String msg = MessageFormat.format("There is no session information for {0}", certificate); //$NON-NLS-1$
 			throw new AccessDeniedException(msg);
 		}
 
-		// validate certificate has not been tampered with
+		// validate certificate has not been tampered with, the same instance needs no further validation
 		Certificate sessionCertificate = privilegeContext.getCertificate();
-		if (!sessionCertificate.equals(certificate)) {
+		if (sessionCertificate != certificate && !isSameCertificate(sessionCertificate, certificate)) {
 			String msg = "Received illegal certificate for session id {0}"; //$NON-NLS-1$
 			msg = MessageFormat.format(msg, certificate.getSessionId());
 			throw new PrivilegeException(msg);
 		}
 
+		// the user only needs to be validated again if the user or one of its roles changed since the context was built
+		long roleModelVersion = this.roleModelVersion;
+		if (isOutdated(privilegeContext, roleModelVersion) && !markUpToDate(privilegeContext, roleModelVersion))
+			privilegeContext = revalidateSession(privilegeContext);
+
+		// validate the session has not yet expired, the expiry wheel might not have evicted it yet
+		long now = System.currentTimeMillis();
+		if (this.sessionExpiryWheel.isExpired(sessionCertificate, now)) {
+			this.sessionStore.remove(certificate.getSessionId());
+			this.sessionRegistry.remove(privilegeContext);
+			if (this.certificateSigner != null)
+				this.certificateSigner.revoke(sessionCertificate);
+			String msg = MessageFormat.format("The session {0} has expired!", certificate.getSessionId()); //$NON-NLS-1$
+			throw new AccessDeniedException(msg);
+		}
+
+		// everything is ok, so register the access, but don't write the same value again on concurrent requests
+		if (sessionCertificate.getLastAccess() != now)
+			sessionCertificate.setLastAccess(now);
+
+		return privilegeContext;
+	}
+
+	/**
+	 * Validates that the given {@link Certificate} is for the same session as the {@link Certificate} of the session.
+	 * This is the same as {@link Certificate#equals(Object)} but the authentication token is compared in constant time,
+	 * so that it can not be guessed by measuring the time of failed validations
+	 * 
+	 * @param sessionCertificate
+	 *            the {@link Certificate} of the session
+	 * @param certificate
+	 *            the {@link Certificate} to validate
+	 * 
+	 * @return true if both {@link Certificate}s are for the same session
+	 */
+	private static boolean isSameCertificate(Certificate sessionCertificate, Certificate certificate) {
+		boolean sameToken = TokenGenerator.constantTimeEquals(sessionCertificate.getAuthToken(),
+				certificate.getAuthToken());
+		return sameToken && sessionCertificate.getSessionId().equals(certificate.getSessionId())
+				&& sessionCertificate.getUsername().equals(certificate.getUsername())
+				&& sessionCertificate.getLocale().equals(certificate.getLocale());
+	}
+
+	/**
+	 * Validates that the user of the given {@link PrivilegeContext} still exists, as the model changed since the
+	 * {@link PrivilegeContext} was built, and replaces the {@link PrivilegeContext} with one built from the current
+	 * model
+	 * 
+	 * @param privilegeContext
+	 *            the {@link PrivilegeContext} to validate
+	 * 
+	 * @return the {@link PrivilegeContext} built from the current model, or the given {@link PrivilegeContext} if it
+	 *         was replaced or removed concurrently
+	 * 
+	 * @throws PrivilegeException
+	 *             if the user does not exist anymore
+	 */
+	private PrivilegeContext revalidateSession(PrivilegeContext privilegeContext) {
+
 		// get user object
+		long modelVersion = this.modelVersion.get();
 		User user = this.persistenceHandler.getUser(privilegeContext.getUsername());
 
 		// if user exists, then certificate is valid
@@ -818,7 +1357,111 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 			throw new PrivilegeException(msg);
 		}
 
-		// everything is ok
+		PrivilegeContext newContext = buildPrivilegeContext(privilegeContext.getCertificate(), user, modelVersion);
+		if (!this.sessionRegistry.replace(privilegeContext, newContext))
+			return privilegeContext;
+
+		this.sessionExpiryWheel.schedule(newContext);
+		return newContext;
+	}
+
+	/**
+	 * Restores the session of a signed {@link Certificate} which was created by another node, or whose session was
+	 * evicted from this node. The session is restored if the signature of the certificate is valid, the session has not
+	 * expired, the user is still enabled and the user's roles have not changed since the login
+	 * 
+	 * @param certificate
+	 *            the signed {@link Certificate}
+	 * 
+	 * @return the restored {@link PrivilegeContext} which is now registered in the {@link SessionRegistry}, or null if
+	 *         the session can not be restored
+	 */
+	private PrivilegeContext restoreSignedSession(Certificate certificate) {
+
+		// signed session ids are always numeric session ids
+		if (SessionRegistry.toSessionKey(certificate.getSessionId()) < 0)
+			return null;
+
+		long modelVersion = this.modelVersion.get();
+		User user = this.persistenceHandler.getUser(certificate.getUsername());
+		if (user == null || user.getUserState() != UserState.ENABLED)
+			return null;
+
+		long now = System.currentTimeMillis();
+		String roleSetVersion = CertificateSigner.getRoleSetVersion(user.getRoles());
+		long loginTime = this.certificateSigner.verify(certificate, roleSetVersion, now);
+		if (loginTime < 0)
+			return null;
+
+		// only use the values of the certificate which are signed, everything else is taken from the user
+		Certificate sessionCertificate = new Certificate(certificate.getSessionId(), loginTime, user.getUsername(),
+				user.getFirstname(), user.getLastname(), certificate.getAuthToken(), user.getLocale(),
+				new HashMap<String, String>(user.getProperties()));
+
+		// the last access is not signed, but the session is in use right now, otherwise it would be considered idle
+		sessionCertificate.setLastAccess(now);
+
+		// the expiry wheel treats sessions missing in the store as invalidated on another node
+		this.sessionStore.store(sessionCertificate);
+		return registerRestoredSession(sessionCertificate, user, modelVersion);
+	}
+
+	/**
+	 * Restores the session of the given {@link Certificate} from the {@link SessionStore}, e.g. if the session was
+	 * created on another node sharing the {@link SessionStore}, or if the session was evicted from this node. The
+	 * session is restored if it has not expired and the user is still enabled
+	 * 
+	 * @param certificate
+	 *            the {@link Certificate} of the session to restore
+	 * 
+	 * @return the restored {@link PrivilegeContext} which is now registered in the {@link SessionRegistry}, or null if
+	 *         the session can not be restored
+	 */
+	private PrivilegeContext restoreStoredSession(Certificate certificate) {
+
+		Certificate storedCertificate = this.sessionStore.load(certificate.getSessionId());
+		if (storedCertificate == null)
+			return null;
+
+		if (this.sessionExpiryWheel.isExpired(storedCertificate, System.currentTimeMillis())) {
+			this.sessionStore.remove(storedCertificate.getSessionId());
+			if (this.certificateSigner != null)
+				this.certificateSigner.revoke(storedCertificate);
+			return null;
+		}
+
+		long modelVersion = this.modelVersion.get();
+		User user = this.persistenceHandler.getUser(storedCertificate.getUsername());
+		if (user == null || user.getUserState() != UserState.ENABLED)
+			return null;
+
+		return registerRestoredSession(storedCertificate, user, modelVersion);
+	}
+
+	/**
+	 * Builds the {@link PrivilegeContext} of a restored session and registers it in the {@link SessionRegistry}
+	 * 
+	 * @param certificate
+	 *            the {@link Certificate} of the restored session
+	 * @param user
+	 *            the {@link User} of the session
+	 * @param modelVersion
+	 *            the model version read before the user was read
+	 * 
+	 * @return the registered {@link PrivilegeContext}
+	 */
+	private PrivilegeContext registerRestoredSession(Certificate certificate, User user, long modelVersion) {
+		PrivilegeContext privilegeContext = buildPrivilegeContext(certificate, user, modelVersion);
+
+		// another thread might have restored the same session concurrently
+		PrivilegeContext existingContext = this.sessionRegistry.putIfAbsent(privilegeContext);
+		if (existingContext != null)
+			return existingContext;
+
+		this.sessionExpiryWheel.schedule(privilegeContext);
+		String msg = "Restored session {} of user {}"; //$NON-NLS-1$
+		DefaultPrivilegeHandler.logger.info(msg, certificate.getSessionId(), certificate.getUsername());
+		return privilegeContext;
 	}
 
 	@Override
@@ -835,27 +1478,24 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 	public PrivilegeContext getPrivilegeContext(Certificate certificate) throws PrivilegeException {
 
 		// first validate certificate
-		isCertificateValid(certificate);
-
-		return this.privilegeContextMap.get(certificate.getSessionId());
+		return validateCertificate(certificate);
 	}
 
+	/**
+	 * Validates that the given {@link Certificate} is valid and that its user has the role
+	 * {@link PrivilegeHandler#PRIVILEGE_ADMIN_ROLE}. The role is not read from the user, but from the
+	 * {@link PrivilegeContext} of the session, which is rebuilt whenever the user changes
+	 * 
+	 * @see ch.eitchnet.privilege.handler.PrivilegeHandler#assertIsPrivilegeAdmin(ch.eitchnet.privilege.model.Certificate)
+	 */
 	@Override
 	public void assertIsPrivilegeAdmin(Certificate certificate) throws PrivilegeException {
 
 		// validate certificate
-		isCertificateValid(certificate);
-
-		// get user object
-		User user = this.persistenceHandler.getUser(certificate.getUsername());
-		if (user == null) {
-			String msg = "Oh boy, how did this happen: No User in user map although the certificate is valid! Certificate: {0}"; //$NON-NLS-1$
-			msg = MessageFormat.format(msg, certificate);
-			throw new PrivilegeException(msg);
-		}
+		PrivilegeContext privilegeContext = validateCertificate(certificate);
 
 		// validate user has PrivilegeAdmin role
-		if (!user.hasRole(PrivilegeHandler.PRIVILEGE_ADMIN_ROLE)) {
+		if (!privilegeContext.isPrivilegeAdmin()) {
 			String msg = "User does not have {0} role! Certificate: {1}"; //$NON-NLS-1$
 			msg = MessageFormat.format(msg, PrivilegeHandler.PRIVILEGE_ADMIN_ROLE, certificate);
 			throw new AccessDeniedException(msg);
@@ -891,7 +1531,7 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 	/**
 	 * Initializes the concrete {@link EncryptionHandler}. The passed parameter map contains any configuration this
 	 * {@link PrivilegeHandler} might need. This method may only be called once and this must be enforced by the
-	 * concrete implementation
+	 * concrete implementation. The sessions are kept in a {@link MemorySessionStore}
 	 * 
 	 * @param parameterMap
 	 *            a map containing configuration properties
@@ -907,13 +1547,40 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 	 */
 	public synchronized void initialize(Map<String, String> parameterMap, EncryptionHandler encryptionHandler,
 			PersistenceHandler persistenceHandler, Map<String, Class<PrivilegePolicy>> policyMap) {
+		initialize(parameterMap, encryptionHandler, persistenceHandler, null, policyMap);
+	}
+
+	/**
+	 * Initializes the concrete {@link EncryptionHandler}. The passed parameter map contains any configuration this
+	 * {@link PrivilegeHandler} might need. This method may only be called once and this must be enforced by the
+	 * concrete implementation
+	 * 
+	 * @param parameterMap
+	 *            a map containing configuration properties
+	 * @param encryptionHandler
+	 *            the {@link EncryptionHandler} instance for this {@link PrivilegeHandler}
+	 * @param persistenceHandler
+	 *            the {@link PersistenceHandler} instance for this {@link PrivilegeHandler}
+	 * @param sessionStore
+	 *            the {@link SessionStore} instance for this {@link PrivilegeHandler}, if null, then a
+	 *            {@link MemorySessionStore} is used
+	 * @param policyMap
+	 *            map of {@link PrivilegePolicy} classes
+	 * 
+	 * @throws PrivilegeException
+	 *             if the this method is called multiple times or an initialization exception occurs
+	 */
+	public synchronized void initialize(Map<String, String> parameterMap, EncryptionHandler encryptionHandler,
+			PersistenceHandler persistenceHandler, SessionStore sessionStore,
+			Map<String, Class<PrivilegePolicy>> policyMap) {
 
 		if (this.initialized)
 			throw new PrivilegeException("Already initialized!"); //$NON-NLS-1$
 
-		this.policyMap = policyMap;
+		this.policyRegistry = new PolicyRegistry(policyMap);
 		this.encryptionHandler = encryptionHandler;
 		this.persistenceHandler = persistenceHandler;
+		this.sessionStore = sessionStore == null ? new MemorySessionStore() : sessionStore;
 
 		String autoPersistS = parameterMap.get(PARAM_AUTO_PERSIST_ON_PASSWORD_CHANGE);
 		if (autoPersistS == null || autoPersistS.equals(Boolean.FALSE.toString())) {
@@ -927,39 +1594,366 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 			logger.error(msg);
 		}
 
+		long sessionIdleTimeout = parseTimeoutParameter(parameterMap, PARAM_SESSION_IDLE_TIMEOUT);
+		long sessionAbsoluteTimeout = parseTimeoutParameter(parameterMap, PARAM_SESSION_ABSOLUTE_TIMEOUT);
+
+		String maxSessionsS = parameterMap.get(PARAM_MAX_SESSIONS_PER_USER);
+		if (maxSessionsS != null && !maxSessionsS.isEmpty()) {
+			try {
+				this.maxSessionsPerUser = Integer.parseInt(maxSessionsS.trim());
+			} catch (NumberFormatException e) {
+				this.maxSessionsPerUser = -1;
+			}
+			if (this.maxSessionsPerUser < 0) {
+				String msg = "Parameter {0} has illegal value {1}. Expected a number, 0 meaning unlimited"; //$NON-NLS-1$
+				msg = MessageFormat.format(msg, PARAM_MAX_SESSIONS_PER_USER, maxSessionsS);
+				throw new PrivilegeException(msg);
+			}
+			if (this.maxSessionsPerUser > 0) {
+				String msg = MessageFormat.format("Users may have at most {0} sessions", this.maxSessionsPerUser); //$NON-NLS-1$
+				logger.info(msg);
+			}
+		}
+
+		String maxSessionDataS = parameterMap.get(PARAM_MAX_SESSION_DATA_BYTES);
+		if (maxSessionDataS != null && !maxSessionDataS.isEmpty()) {
+			try {
+				this.maxSessionDataBytes = Long.parseLong(maxSessionDataS.trim());
+			} catch (NumberFormatException e) {
+				this.maxSessionDataBytes = -1L;
+			}
+			if (this.maxSessionDataBytes <= 0L) {
+				String msg = "Parameter {0} has illegal value {1}. Expected a positive number of bytes"; //$NON-NLS-1$
+				msg = MessageFormat.format(msg, PARAM_MAX_SESSION_DATA_BYTES, maxSessionDataS);
+				throw new PrivilegeException(msg);
+			}
+		}
+
+		String decisionCacheSizeS = parameterMap.get(PARAM_DECISION_CACHE_SIZE);
+		if (decisionCacheSizeS != null && !decisionCacheSizeS.isEmpty()) {
+			try {
+				this.decisionCacheSize = Integer.parseInt(decisionCacheSizeS.trim());
+			} catch (NumberFormatException e) {
+				this.decisionCacheSize = -1;
+			}
+			if (this.decisionCacheSize < 0) {
+				String msg = "Parameter {0} has illegal value {1}. Expected a number, 0 meaning no caching"; //$NON-NLS-1$
+				msg = MessageFormat.format(msg, PARAM_DECISION_CACHE_SIZE, decisionCacheSizeS);
+				throw new PrivilegeException(msg);
+			}
+		}
+
+		String auditLogFileS = parameterMap.get(PARAM_AUDIT_LOG_FILE);
+		if (auditLogFileS != null && !auditLogFileS.isEmpty()) {
+			this.auditLog = createAuditLog(new File(auditLogFileS), parameterMap);
+			this.auditLog.start();
+			logger.info("Auditing to {}", auditLogFileS); //$NON-NLS-1$
+		}
+
 		// validate policies on privileges of Roles
-		for (Role role : persistenceHandler.getAllRoles()) {
+		List<Role> roles = persistenceHandler.getAllRoles();
+		for (Role role : roles) {
 			validatePolicies(role);
 		}
 
-		this.lastSessionId = 0l;
-		this.privilegeContextMap = Collections.synchronizedMap(new HashMap<String, PrivilegeContext>());
+		// resolve the inherited privileges of the roles
+		this.roleHierarchy = new RoleHierarchy(roles);
+
+		String signingKey = parameterMap.get(PARAM_CERTIFICATE_SIGNING_KEY);
+		if (signingKey != null && !signingKey.isEmpty()) {
+			if (sessionAbsoluteTimeout == 0L) {
+				String msg = "Parameter {0} requires the parameter {1} to be set"; //$NON-NLS-1$
+				msg = MessageFormat.format(msg, PARAM_CERTIFICATE_SIGNING_KEY, PARAM_SESSION_ABSOLUTE_TIMEOUT);
+				throw new PrivilegeException(msg);
+			}
+			this.certificateSigner = new CertificateSigner(signingKey, sessionAbsoluteTimeout);
+			logger.info("Certificates are signed and can be validated by all nodes sharing the signing key."); //$NON-NLS-1$
+		}
+
+		this.sessionRegistry = new SessionRegistry();
+		this.sessionExpiryWheel = new SessionExpiryWheel(this.sessionRegistry, this.sessionStore,
+				this.certificateSigner, sessionIdleTimeout, sessionAbsoluteTimeout);
+		if (this.sessionExpiryWheel.isEnabled()) {
+			String msg = "Sessions expire after {0}s idle time and {1}s after login (0 means never)"; //$NON-NLS-1$
+			logger.info(MessageFormat.format(msg, sessionIdleTimeout / 1000L, sessionAbsoluteTimeout / 1000L));
+			this.sessionExpiryWheel.start();
+		}
+
+		String snapshotFileS = parameterMap.get(PARAM_SESSION_SNAPSHOT_FILE);
+		if (snapshotFileS != null && !snapshotFileS.isEmpty()) {
+			this.sessionSnapshot = new SessionSnapshot(new File(snapshotFileS), this.sessionRegistry,
+					this.sessionStore, this.sessionExpiryWheel);
+			restoreSessionSnapshot();
+			long snapshotInterval = parseTimeoutParameter(parameterMap, PARAM_SESSION_SNAPSHOT_INTERVAL);
+			if (snapshotInterval > 0)
+				this.sessionSnapshot.start(snapshotInterval);
+		}
+
 		this.initialized = true;
 	}
 
 	/**
-	 * Validates that the policies which are not null on the privileges of the role exist
+	 * Stops any background work of this {@link PrivilegeHandler}, i.e. the eviction of expired sessions, writes the
+	 * session snapshot if configured and writes the remaining audit events. The sessions are not invalidated
+	 */
+	public synchronized void destroy() {
+		if (this.sessionExpiryWheel != null)
+			this.sessionExpiryWheel.stop();
+		if (this.sessionSnapshot != null) {
+			this.sessionSnapshot.stop();
+			this.sessionSnapshot.write();
+		}
+		if (this.auditLog != null)
+			this.auditLog.stop();
+	}
+
+	/**
+	 * Creates the {@link AuditLog} writing to the given file, configured by the audit log parameters
+	 * 
+	 * @param file
+	 *            the file to which the audit events are written
+	 * @param parameterMap
+	 *            the map containing the parameters
+	 * 
+	 * @return the {@link AuditLog}, which is not yet started
+	 * 
+	 * @throws PrivilegeException
+	 *             if a parameter has an illegal value
+	 */
+	private AuditLog createAuditLog(File file, Map<String, String> parameterMap) throws PrivilegeException {
+
+		int bufferSize = AuditLog.DEFAULT_BUFFER_SIZE;
+		String bufferSizeS = parameterMap.get(PARAM_AUDIT_LOG_BUFFER_SIZE);
+		if (bufferSizeS != null && !bufferSizeS.isEmpty()) {
+			try {
+				bufferSize = Integer.parseInt(bufferSizeS.trim());
+			} catch (NumberFormatException e) {
+				bufferSize = -1;
+			}
+			if (bufferSize <= 0 || bufferSize > (1 << 30)) {
+				String msg = "Parameter {0} has illegal value {1}. Expected a positive number of events"; //$NON-NLS-1$
+				msg = MessageFormat.format(msg, PARAM_AUDIT_LOG_BUFFER_SIZE, bufferSizeS);
+				throw new PrivilegeException(msg);
+			}
+		}
+
+		boolean blockWhenFull = false;
+		String whenFullS = parameterMap.get(PARAM_AUDIT_LOG_WHEN_FULL);
+		if (whenFullS != null && !whenFullS.isEmpty()) {
+			if ("block".equalsIgnoreCase(whenFullS.trim())) { //$NON-NLS-1$
+				blockWhenFull = true;
+			} else if (!"drop".equalsIgnoreCase(whenFullS.trim())) { //$NON-NLS-1$
+				String msg = "Parameter {0} has illegal value {1}. Expected drop or block"; //$NON-NLS-1$
+				msg = MessageFormat.format(msg, PARAM_AUDIT_LOG_WHEN_FULL, whenFullS);
+				throw new PrivilegeException(msg);
+			}
+		}
+
+		long maxFileSize = AuditLog.DEFAULT_MAX_FILE_SIZE;
+		String maxFileSizeS = parameterMap.get(PARAM_AUDIT_LOG_MAX_FILE_SIZE);
+		if (maxFileSizeS != null && !maxFileSizeS.isEmpty()) {
+			try {
+				maxFileSize = Long.parseLong(maxFileSizeS.trim());
+			} catch (NumberFormatException e) {
+				maxFileSize = -1L;
+			}
+			if (maxFileSize <= 0L) {
+				String msg = "Parameter {0} has illegal value {1}. Expected a positive number of bytes"; //$NON-NLS-1$
+				msg = MessageFormat.format(msg, PARAM_AUDIT_LOG_MAX_FILE_SIZE, maxFileSizeS);
+				throw new PrivilegeException(msg);
+			}
+		}
+
+		int maxFiles = AuditLog.DEFAULT_MAX_FILES;
+		String maxFilesS = parameterMap.get(PARAM_AUDIT_LOG_MAX_FILES);
+		if (maxFilesS != null && !maxFilesS.isEmpty()) {
+			try {
+				maxFiles = Integer.parseInt(maxFilesS.trim());
+			} catch (NumberFormatException e) {
+				maxFiles = -1;
+			}
+			if (maxFiles <= 0) {
+				String msg = "Parameter {0} has illegal value {1}. Expected a positive number of files"; //$NON-NLS-1$
+				msg = MessageFormat.format(msg, PARAM_AUDIT_LOG_MAX_FILES, maxFilesS);
+				throw new PrivilegeException(msg);
+			}
+		}
+
+		return new AuditLog(file, bufferSize, blockWhenFull, maxFileSize, maxFiles);
+	}
+
+	/**
+	 * Restores the sessions from the snapshot file into the {@link SessionStore}. The {@link PrivilegeContext}s are
+	 * only built when a session is used again, so that a restart does not need to rebuild all sessions at once
+	 */
+	private void restoreSessionSnapshot() {
+		long now = System.currentTimeMillis();
+		int nrOfSessions = 0;
+		for (Certificate certificate : this.sessionSnapshot.read()) {
+			if (!this.sessionExpiryWheel.isExpired(certificate, now)) {
+				this.sessionStore.store(certificate);
+				nrOfSessions++;
+			}
+		}
+
+		if (nrOfSessions > 0)
+			logger.info(MessageFormat.format("Restored {0} sessions from snapshot", nrOfSessions)); //$NON-NLS-1$
+	}
+
+	/**
+	 * Parses the timeout parameter with the given name which is defined in seconds
+	 * 
+	 * @param parameterMap
+	 *            the map containing the parameters
+	 * @param paramName
+	 *            the name of the parameter to parse
+	 * 
+	 * @return the timeout in milliseconds, or 0 if the parameter is not set
+	 * 
+	 * @throws PrivilegeException
+	 *             if the parameter is not a positive number
+	 */
+	private long parseTimeoutParameter(Map<String, String> parameterMap, String paramName) {
+
+		String timeoutS = parameterMap.get(paramName);
+		if (timeoutS == null || timeoutS.isEmpty())
+			return 0L;
+
+		long timeout;
+		try {
+			timeout = Long.parseLong(timeoutS.trim());
+		} catch (NumberFormatException e) {
+			timeout = -1L;
+		}
+
+		if (timeout < 0) {
+			String msg = "Parameter {0} has illegal value {1}. Expected the number of seconds, 0 meaning never"; //$NON-NLS-1$
+			msg = MessageFormat.format(msg, paramName, timeoutS);
+			throw new PrivilegeException(msg);
+		}
+
+		return timeout * 1000L;
+	}
+
+	/**
+	 * Validates that the policies which are not null on the privileges of the role exist. The names of the privileges
+	 * are interned to their ids in {@link PrivilegeIds}, and the rules of privileges with a {@link CompilingPolicy} are
+	 * compiled on the way
 	 * 
 	 * @param role
 	 *            the role for which the policies are to be checked
 	 */
 	private void validatePolicies(Role role) {
 		for (String privilegeName : role.getPrivilegeNames()) {
+			PrivilegeIds.idOf(privilegeName);
 			IPrivilege privilege = role.getPrivilege(privilegeName);
 			String policy = privilege.getPolicy();
-			if (policy != null && !this.policyMap.containsKey(policy)) {
+			if (policy != null && !this.policyRegistry.containsPolicy(policy)) {
 				String msg = "Policy {0} for Privilege {1} does not exist on role {2}"; //$NON-NLS-1$
 				msg = MessageFormat.format(msg, policy, privilege.getName(), role);
 				throw new PrivilegeException(msg);
 			}
+			compileRules(privilege);
+		}
+	}
+
+	/**
+	 * Adds or replaces the given role in the {@link PersistenceHandler} and the {@link RoleHierarchy}. The new
+	 * {@link RoleHierarchy} is created before the role is persisted, so that a role which extends a missing role or
+	 * leads to a cycle is rejected without changing the model
+	 * 
+	 * @param role
+	 *            the role to add or replace
+	 */
+	private void replaceRole(Role role) {
+		synchronized (this.roleLock) {
+			RoleHierarchy newRoleHierarchy = this.roleHierarchy.withRole(role);
+			this.persistenceHandler.addOrReplaceRole(role);
+			this.roleHierarchy = newRoleHierarchy;
+			refreshRoleSessions(newRoleHierarchy.getDependentRoleNames(role.getName()));
+		}
+	}
+
+	/**
+	 * <p>
+	 * Propagates a change of roles to the existing sessions, so that users do not need to log in again. The privileges
+	 * of the sessions of users with one of the given roles are replaced in their {@link PrivilegeContext}s by the
+	 * {@link RoleSetView} of the new roles, which is built only once per set of roles. The {@link PrivilegeContext}s are
+	 * not replaced, thus references held by clients see the change as well. The sessions are found through the index by
+	 * role of the {@link SessionRegistry}, all other sessions are not visited, but are marked as being up to date on
+	 * their next validation
+	 * </p>
+	 * 
+	 * <p>
+	 * The model version is incremented before the sessions are visited, so that a session which is built concurrently
+	 * from the old roles is revalidated on its next use. Sessions whose user changed are left to be revalidated as well.
+	 * A session whose privileges can not be built anymore, e.g. because one of its roles was removed, is invalidated
+	 * </p>
+	 * 
+	 * @param roleNames
+	 *            the names of the roles whose effective privileges changed
+	 */
+	private void refreshRoleSessions(Set<String> roleNames) {
+		long modelVersion = this.modelVersion.incrementAndGet();
+
+		// the versions of the roles are written first, so that a validation reading the new version also sees them
+		Long newVersion = Long.valueOf(modelVersion);
+		for (String roleName : roleNames) {
+			this.roleModelVersions.put(roleName, newVersion);
+		}
+		this.roleModelVersion = modelVersion;
+
+		// a session of a user with several of the roles is only refreshed once
+		Set<PrivilegeContext> privilegeContexts = new HashSet<PrivilegeContext>();
+		for (String roleName : roleNames) {
+			privilegeContexts.addAll(this.sessionRegistry.getRoleSessions(roleName));
+		}
+
+		for (PrivilegeContext privilegeContext : privilegeContexts) {
+
+			// marking an outdated session as up to date would hide a concurrent change of its user
+			if (isUserOutdated(privilegeContext))
+				continue;
+
+			Set<String> userRoles = privilegeContext.getUserRep().getRoles();
+			RoleSetView roleSetView;
+			try {
+				roleSetView = getRoleSetView(userRoles);
+			} catch (PrivilegeException e) {
+				logger.error("Failed to refresh session {}: {}", privilegeContext.getCertificate().getSessionId(), //$NON-NLS-1$
+						e.getMessage());
+				removeSession(privilegeContext);
+				continue;
+			}
+			privilegeContext.refresh(roleSetView,
+					newStatefulPolicies(roleSetView, privilegeContext.getStatefulPolicies()), modelVersion);
 		}
 	}
 
 	/**
+	 * Compiles the allow and deny lists of the given {@link IPrivilege} if its policy is a {@link CompilingPolicy}
+	 * 
+	 * @param privilege
+	 *            the {@link IPrivilege} to compile
+	 */
+	private void compileRules(IPrivilege privilege) {
+		PrivilegePolicy policy = this.policyRegistry.getPolicy(privilege.getPolicy());
+		if (policy instanceof CompilingPolicy)
+			privilege.setCompiledRules(((CompilingPolicy) policy).compile(privilege));
+	}
+
+	/**
+	 * Returns a new random session id which is not yet used by an active session. No lock is held, as the session ids
+	 * are random values created by each thread on its own
+	 * 
 	 * @return a new session id
 	 */
-	private synchronized String nextSessionId() {
-		return Long.toString(++this.lastSessionId % Long.MAX_VALUE);
+	private String nextSessionId() {
+		String sessionId;
+		do {
+			sessionId = Long.toString(TokenGenerator.nextSessionId());
+		} while (this.sessionRegistry.get(sessionId) != null);
+		return sessionId;
 	}
 
 	/**
@@ -996,17 +1990,24 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 
 		// validate this system user may perform the given action
 		String actionClassname = action.getClass().getName();
-		checkPrivilege(actionClassname, systemUser);
+		try {
+			checkPrivilege(actionClassname, systemUser);
+		} catch (PrivilegeException e) {
+			if (this.auditLog != null)
+				this.auditLog.record(AuditLog.Event.SYSTEM_ACTION_DENIED, systemUsername, null, actionClassname, null);
+			throw e;
+		}
 
 		// get certificate for this system user
 		PrivilegeContext systemUserPrivilegeContext = getSystemUserPrivilegeContext(systemUsername);
-		String sessionId = systemUserPrivilegeContext.getCertificate().getSessionId();
-		this.privilegeContextMap.put(sessionId, systemUserPrivilegeContext);
+		if (this.auditLog != null)
+			this.auditLog.record(AuditLog.Event.SYSTEM_ACTION, systemUserPrivilegeContext, actionClassname, null);
+		this.sessionRegistry.put(systemUserPrivilegeContext);
 		try {
 			// perform the action
 			action.execute(systemUserPrivilegeContext);
 		} finally {
-			this.privilegeContextMap.remove(sessionId);
+			this.sessionRegistry.remove(systemUserPrivilegeContext);
 		}
 	}
 
@@ -1023,13 +2024,12 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 	 */
 	private void checkPrivilege(String privilegeName, User user) throws PrivilegeException {
 
-		// check each role if it has the privilege
+		// check each role if it has the privilege, either by itself or inherited
+		RoleHierarchy roleHierarchy = this.roleHierarchy;
 		for (String roleName : user.getRoles()) {
 
-			Role role = this.persistenceHandler.getRole(roleName);
-
 			// on the first occurrence of our privilege, stop
-			if (role.hasPrivilege(privilegeName))
+			if (roleHierarchy.hasPrivilege(roleName, privilegeName))
 				return;
 		}
 
@@ -1050,6 +2050,7 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 	private PrivilegeContext getSystemUserPrivilegeContext(String systemUsername) {
 
 		// get user object
+		long modelVersion = this.modelVersion.get();
 		User user = this.persistenceHandler.getUser(systemUsername);
 		// no user means no authentication
 		if (user == null) {
@@ -1077,7 +2078,7 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 			throw new PrivilegeException(msg);
 		}
 
-		// get 2 auth tokens
+		// get an auth token
 		String authToken = this.encryptionHandler.nextToken();
 
 		// get next session id
@@ -1088,50 +2089,12 @@ public class DefaultPrivilegeHandler implements PrivilegeHandler {
 				null, null, authToken, user.getLocale(), new HashMap<String, String>(user.getProperties()));
 
 		// create and save a new privilege context
-		PrivilegeContext privilegeContext = buildPrivilegeContext(systemUserCertificate, user);
+		PrivilegeContext privilegeContext = buildPrivilegeContext(systemUserCertificate, user, modelVersion);
 
 		// log
-		String msg = "The system user {0} is logged in with session {1}"; //$NON-NLS-1$
-		msg = MessageFormat.format(msg, systemUsername, systemUserCertificate);
-		DefaultPrivilegeHandler.logger.info(msg);
+		String msg = "The system user {} is logged in with session {}"; //$NON-NLS-1$
+		DefaultPrivilegeHandler.logger.info(msg, systemUsername, systemUserCertificate);
 
 		return privilegeContext;
 	}
-
-	/**
-	 * <p>
-	 * This method instantiates a {@link PrivilegePolicy} object from the given policyName. The {@link PrivilegePolicy}
-	 * is not stored in a database. The privilege name is a class name and is then used to instantiate a new
-	 * {@link PrivilegePolicy} object
-	 * </p>
-	 * 
-	 * @param policyName
-	 *            the class name of the {@link PrivilegePolicy} object to return
-	 * 
-	 * @return the {@link PrivilegePolicy} object
-	 * 
-	 * @throws PrivilegeException
-	 *             if the {@link PrivilegePolicy} object for the given policy name could not be instantiated
-	 */
-	private PrivilegePolicy getPolicy(String policyName) {
-
-		// get the policies class
-		Class<PrivilegePolicy> policyClazz = this.policyMap.get(policyName);
-		if (policyClazz == null) {
-			return null;
-		}
-
-		// instantiate the policy
-		PrivilegePolicy policy;
-		try {
-
-			policy = policyClazz.newInstance();
-		} catch (Exception e) {
-			String msg = "The class for the policy with the name {0} does not exist!{1}"; //$NON-NLS-1$
-			msg = MessageFormat.format(msg, policyName, policyName);
-			throw new PrivilegeException(msg, e);
-		}
-
-		return policy;
-	}
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.handler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.helper.TokenGenerator;
+import ch.eitchnet.privilege.helper.XmlConstants;
+import ch.eitchnet.privilege.model.Certificate;
+import ch.eitchnet.privilege.model.SessionDataMap;
+
+/**
+ * <p>
+ * {@link SessionStore} which keeps every {@link Certificate} as a file in a directory. If multiple
+ * {@link PrivilegeHandler}s, e.g. in several JVMs on the same host or on hosts sharing a file system, are configured
+ * with the same directory, then a session created on one of them can be used on all of them
+ * </p>
+ * 
+ * <p>
+ * A {@link Certificate} is first written to a temporary file which is then renamed, so that other readers never see a
+ * partially written {@link Certificate}
+ * </p>
+ * 
+ * <p>
+ * The {@link Certificate} is written in the same binary format as in a {@link SessionSnapshot}, followed by its
+ * session data. As the files contain the authentication tokens, they are only readable by the owner
+ * </p>
+ * 
+ * <p>
+ * Required parameters:
+ * <ul>
+ * <li>{@link XmlConstants#XML_PARAM_BASE_PATH}: the directory in which the sessions are stored, it is created if it
+ * does not exist</li>
+ * </ul>
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class FileSessionStore implements SessionStore {
+
+	protected static final Logger logger = LoggerFactory.getLogger(FileSessionStore.class);
+
+	private static final String SESSION_FILE_SUFFIX = ".session"; //$NON-NLS-1$
+	private static final String TMP_FILE_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+	/**
+	 * the first bytes of a session file: PRSF
+	 */
+	private static final int MAGIC = 0x50525346;
+
+	/**
+	 * the version of the file format
+	 */
+	private static final int VERSION = 1;
+
+	private File sessionPath;
+
+	@Override
+	public void store(Certificate certificate) {
+
+		File sessionFile = getSessionFile(certificate.getSessionId());
+		if (sessionFile == null) {
+			String msg = "The session id {0} is not a valid session id!"; //$NON-NLS-1$
+			throw new PrivilegeException(MessageFormat.format(msg, certificate.getSessionId()));
+		}
+
+		File tmpFile = new File(this.sessionPath, sessionFile.getName() + "." + TokenGenerator.nextToken(6) //$NON-NLS-1$
+				+ TMP_FILE_SUFFIX);
+		try {
+
+			// serialize first, so that the file is written in one go
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			SessionSnapshot.writeCertificate(out, certificate);
+			writeSessionData(out, (SessionDataMap) certificate.getSessionDataMap());
+			out.close();
+
+			SessionSnapshot.createOwnerOnlyFile(tmpFile);
+			OutputStream fileOut = new FileOutputStream(tmpFile);
+			try {
+				bytes.writeTo(fileOut);
+			} finally {
+				fileOut.close();
+			}
+
+			// renaming fails on some platforms if the target exists
+			if (!tmpFile.renameTo(sessionFile) && !(sessionFile.delete() && tmpFile.renameTo(sessionFile))) {
+				String msg = "Failed to rename {0} to {1}"; //$NON-NLS-1$
+				throw new IOException(MessageFormat.format(msg, tmpFile, sessionFile));
+			}
+
+		} catch (IOException e) {
+			if (tmpFile.exists() && !tmpFile.delete())
+				logger.error(MessageFormat.format("Failed to delete temporary file {0}", tmpFile)); //$NON-NLS-1$
+			String msg = "Failed to store session {0} at {1}"; //$NON-NLS-1$
+			msg = MessageFormat.format(msg, certificate.getSessionId(), sessionFile.getAbsolutePath());
+			throw new PrivilegeException(msg, e);
+		}
+	}
+
+	@Override
+	public Certificate load(String sessionId) {
+
+		File sessionFile = getSessionFile(sessionId);
+		if (sessionFile == null || !sessionFile.isFile())
+			return null;
+
+		byte[] bytes;
+		try {
+			InputStream in = new FileInputStream(sessionFile);
+			try {
+				bytes = readFully(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+
+			// the session might have been removed concurrently, otherwise the session is not available on this node
+			if (sessionFile.exists()) {
+				String msg = "Failed to load session {0} from {1}"; //$NON-NLS-1$
+				logger.error(MessageFormat.format(msg, sessionId, sessionFile.getAbsolutePath()), e);
+			}
+			return null;
+		}
+
+		// as the files are renamed after writing, a file which can not be parsed is corrupt and is never used again
+		try {
+			DataInputStream dataIn = new DataInputStream(new ByteArrayInputStream(bytes));
+			if (dataIn.readInt() != MAGIC || dataIn.readInt() != VERSION) {
+				String msg = "The file is not a session of version {0}"; //$NON-NLS-1$
+				throw new IOException(MessageFormat.format(msg, VERSION));
+			}
+
+			Certificate certificate = SessionSnapshot.readCertificate(dataIn);
+			readSessionData(dataIn, (SessionDataMap) certificate.getSessionDataMap());
+			return certificate;
+
+		} catch (IOException | RuntimeException e) {
+			String msg = "Deleting corrupt session file {0}"; //$NON-NLS-1$
+			logger.error(MessageFormat.format(msg, sessionFile.getAbsolutePath()), e);
+			if (!sessionFile.delete() && sessionFile.exists())
+				logger.error(MessageFormat.format("Failed to delete session file {0}", sessionFile)); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	@Override
+	public void remove(String sessionId) {
+		File sessionFile = getSessionFile(sessionId);
+		if (sessionFile != null && sessionFile.exists() && !sessionFile.delete() && sessionFile.exists()) {
+			String msg = "Failed to delete session file {0}"; //$NON-NLS-1$
+			throw new PrivilegeException(MessageFormat.format(msg, sessionFile.getAbsolutePath()));
+		}
+	}
+
+	@Override
+	public void initialize(Map<String, String> parameterMap) {
+
+		String basePath = parameterMap.get(XmlConstants.XML_PARAM_BASE_PATH);
+		if (basePath == null || basePath.isEmpty()) {
+			String msg = "[{0}] Defined parameter {1} is invalid"; //$NON-NLS-1$
+			msg = MessageFormat.format(msg, SessionStore.class.getName(), XmlConstants.XML_PARAM_BASE_PATH);
+			throw new PrivilegeException(msg);
+		}
+
+		File basePathF = new File(basePath);
+		if (!basePathF.isDirectory() && !basePathF.mkdirs() && !basePathF.isDirectory()) {
+			String msg = "[{0}] Defined parameter {1} does not point to a valid path at {2}"; //$NON-NLS-1$
+			msg = MessageFormat.format(msg, SessionStore.class.getName(), XmlConstants.XML_PARAM_BASE_PATH,
+					basePathF.getAbsolutePath());
+			throw new PrivilegeException(msg);
+		}
+
+		this.sessionPath = basePathF;
+		logger.info(MessageFormat.format("Sessions are stored at {0}", basePathF.getAbsolutePath())); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns the file for the given session id. Only numeric session ids are accepted, so that a session id can never
+	 * point to a file outside of the session path
+	 * 
+	 * @param sessionId
+	 *            the session id
+	 * 
+	 * @return the file of the session, or null if the session id is not valid
+	 */
+	private File getSessionFile(String sessionId) {
+		if (SessionRegistry.toSessionKey(sessionId) < 0)
+			return null;
+		return new File(this.sessionPath, sessionId + SESSION_FILE_SUFFIX);
+	}
+
+	private static void writeSessionData(DataOutputStream out, SessionDataMap sessionDataMap) throws IOException {
+		out.writeLong(sessionDataMap.getMaxBytes());
+
+		// the map may be changed concurrently, thus the entries are counted while writing
+		ByteArrayOutputStream entryBytes = new ByteArrayOutputStream(128);
+		DataOutputStream entryOut = new DataOutputStream(entryBytes);
+		int nrOfEntries = 0;
+		for (Entry<String, String> entry : sessionDataMap.entrySet()) {
+			writeString(entryOut, entry.getKey());
+			writeString(entryOut, entry.getValue());
+			nrOfEntries++;
+		}
+		entryOut.close();
+
+		out.writeInt(nrOfEntries);
+		entryBytes.writeTo(out);
+	}
+
+	private static void readSessionData(DataInputStream in, SessionDataMap sessionDataMap) throws IOException {
+		sessionDataMap.setMaxBytes(in.readLong());
+
+		// every entry takes at least the two lengths of its key and value
+		int nrOfEntries = in.readInt();
+		if (nrOfEntries < 0 || nrOfEntries > in.available() / 8)
+			throw new IOException(MessageFormat.format("Illegal number of session data entries {0}", nrOfEntries)); //$NON-NLS-1$
+		for (int i = 0; i < nrOfEntries; i++) {
+			sessionDataMap.put(readString(in), readString(in));
+		}
+	}
+
+	/**
+	 * Session data may exceed the 64 KB to which {@link DataOutputStream#writeUTF(String)} is limited, thus it is
+	 * written with its length as int
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+
+		// the stream is read from memory, thus the available bytes are all remaining bytes
+		int length = in.readInt();
+		if (length < 0 || length > in.available())
+			throw new IOException(MessageFormat.format("Illegal string length {0}", length)); //$NON-NLS-1$
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+		byte[] buffer = new byte[512];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+}
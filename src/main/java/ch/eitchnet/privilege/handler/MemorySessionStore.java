@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.handler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ch.eitchnet.privilege.model.Certificate;
+
+/**
+ * {@link SessionStore} which keeps the {@link Certificate}s in memory. This is the default {@link SessionStore} and
+ * only allows to restore sessions on the same node
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class MemorySessionStore implements SessionStore {
+
+	private final Map<String, Certificate> certificates;
+
+	/**
+	 * Default constructor
+	 */
+	public MemorySessionStore() {
+		this.certificates = new ConcurrentHashMap<String, Certificate>();
+	}
+
+	@Override
+	public void store(Certificate certificate) {
+		this.certificates.put(certificate.getSessionId(), certificate);
+	}
+
+	@Override
+	public Certificate load(String sessionId) {
+		return this.certificates.get(sessionId);
+	}
+
+	@Override
+	public void remove(String sessionId) {
+		this.certificates.remove(sessionId);
+	}
+
+	@Override
+	public void initialize(Map<String, String> parameterMap) {
+		// nothing to configure
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.handler;
+
+import java.lang.reflect.Constructor;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.policy.PrivilegePolicy;
+import ch.eitchnet.privilege.policy.StatefulPolicy;
+
+/**
+ * <p>
+ * The {@link PolicyRegistry} holds the configured {@link PrivilegePolicy}s by name. Every policy is instantiated once
+ * when the registry is created and the instance is shared by all {@link ch.eitchnet.privilege.model.PrivilegeContext}s,
+ * except for {@link StatefulPolicy}s, of which a new instance is created on every request using the constructor
+ * looked up when the registry was created
+ * </p>
+ * 
+ * <p>
+ * Note: This is an internal object which is not to be passed to clients
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class PolicyRegistry {
+
+	private final Map<String, PrivilegePolicy> sharedPolicies;
+	private final Map<String, Constructor<? extends PrivilegePolicy>> statefulPolicies;
+
+	/**
+	 * Default constructor
+	 * 
+	 * @param policyMap
+	 *            the {@link PrivilegePolicy} classes by the name of the policy
+	 */
+	public PolicyRegistry(Map<String, Class<PrivilegePolicy>> policyMap) {
+		this.sharedPolicies = new HashMap<String, PrivilegePolicy>();
+		this.statefulPolicies = new HashMap<String, Constructor<? extends PrivilegePolicy>>();
+
+		for (Entry<String, Class<PrivilegePolicy>> entry : policyMap.entrySet()) {
+			String policyName = entry.getKey();
+			Class<PrivilegePolicy> policyClazz = entry.getValue();
+
+			Constructor<PrivilegePolicy> constructor;
+			try {
+				constructor = policyClazz.getConstructor();
+			} catch (NoSuchMethodException e) {
+				String msg = "The class {0} for the policy with the name {1} has no public default constructor!"; //$NON-NLS-1$
+				msg = MessageFormat.format(msg, policyClazz.getName(), policyName);
+				throw new PrivilegeException(msg, e);
+			}
+
+			if (StatefulPolicy.class.isAssignableFrom(policyClazz))
+				this.statefulPolicies.put(policyName, constructor);
+			else
+				this.sharedPolicies.put(policyName, newInstance(policyName, constructor));
+		}
+	}
+
+	/**
+	 * @param policyName
+	 *            the name of the policy
+	 * 
+	 * @return true if a policy with the given name is registered
+	 */
+	public boolean containsPolicy(String policyName) {
+		return this.sharedPolicies.containsKey(policyName) || this.statefulPolicies.containsKey(policyName);
+	}
+
+	/**
+	 * Returns the {@link PrivilegePolicy} with the given name, which is the shared instance, or a new instance if the
+	 * policy is a {@link StatefulPolicy}
+	 * 
+	 * @param policyName
+	 *            the name of the policy
+	 * 
+	 * @return the {@link PrivilegePolicy}, or null if no policy with the given name is registered
+	 */
+	public PrivilegePolicy getPolicy(String policyName) {
+		PrivilegePolicy policy = this.sharedPolicies.get(policyName);
+		if (policy != null)
+			return policy;
+
+		Constructor<? extends PrivilegePolicy> constructor = this.statefulPolicies.get(policyName);
+		if (constructor == null)
+			return null;
+		return newInstance(policyName, constructor);
+	}
+
+	private static PrivilegePolicy newInstance(String policyName, Constructor<? extends PrivilegePolicy> constructor) {
+		try {
+			return constructor.newInstance();
+		} catch (Exception e) {
+			String msg = "The policy with the name {0} could not be instantiated!"; //$NON-NLS-1$
+			msg = MessageFormat.format(msg, policyName);
+			throw new PrivilegeException(msg, e);
+		}
+	}
+}
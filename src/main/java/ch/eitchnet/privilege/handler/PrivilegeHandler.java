@@ -339,6 +339,43 @@ public interface PrivilegeHandler {
 	 */
 	public boolean invalidateSession(Certificate certificate);
 
+	/**
+	 * Returns the number of active sessions of the user with the given username on this {@link PrivilegeHandler}
+	 * 
+	 * @param certificate
+	 *            the {@link Certificate} of the user which has the privilege to perform this action
+	 * @param username
+	 *            the username of the user for which the sessions are to be counted
+	 * 
+	 * @return the number of active sessions of the user
+	 * 
+	 * @throws AccessDeniedException
+	 *             if the user for this certificate may not perform the action
+	 * @throws PrivilegeException
+	 *             if there is anything wrong with this certificate
+	 */
+	public int getActiveSessionCount(Certificate certificate, String username) throws AccessDeniedException,
+			PrivilegeException;
+
+	/**
+	 * Returns the estimated size in bytes of the session data of all active sessions of the user with the given
+	 * username on this {@link PrivilegeHandler}, see {@link Certificate#getSessionDataMap()}
+	 * 
+	 * @param certificate
+	 *            the {@link Certificate} of the user which has the privilege to perform this action
+	 * @param username
+	 *            the username of the user for which the session data is to be measured
+	 * 
+	 * @return the estimated size in bytes of the session data of the user's sessions
+	 * 
+	 * @throws AccessDeniedException
+	 *             if the user for this certificate may not perform the action
+	 * @throws PrivilegeException
+	 *             if there is anything wrong with this certificate
+	 */
+	public long getSessionDataBytes(Certificate certificate, String username) throws AccessDeniedException,
+			PrivilegeException;
+
 	/**
 	 * Checks if the given {@link Certificate} is valid. This means that the certificate is for a valid session and that
 	 * the user exists for the certificate. This method checks if the {@link Certificate} has been tampered with
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.handler;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.eitchnet.privilege.model.Certificate;
+import ch.eitchnet.privilege.model.PrivilegeContext;
+
+/**
+ * <p>
+ * The {@link SessionExpiryWheel} evicts sessions from a {@link SessionRegistry} which have been idle for longer than
+ * the configured idle timeout, or which have been logged in longer than the configured absolute timeout
+ * </p>
+ * 
+ * <p>
+ * Sessions are placed in a timing wheel, i.e. a ring of buckets where each bucket represents one tick of time. A
+ * background thread advances over the buckets once per tick and only looks at the sessions in the current bucket. As
+ * the idle deadline moves whenever a session is accessed, the sessions are not rescheduled on access, instead the
+ * deadline is recalculated from {@link Certificate#getLastAccess()} when the bucket is processed and the session is
+ * then either evicted or placed in the bucket of its new deadline
+ * </p>
+ * 
+ * <p>
+ * The {@link SessionRegistry} is only a cache of the sessions in the {@link SessionStore}, which might be shared with
+ * other nodes. When a session is rescheduled, its last access is written to the {@link SessionStore}, so that other
+ * nodes see that it is still in use, and if it is not in the {@link SessionStore} anymore, then it was invalidated on
+ * another node and is evicted. When a session expires locally, it is only removed from the {@link SessionStore} if the
+ * stored session has expired as well
+ * </p>
+ * 
+ * <p>
+ * If the {@link Certificate}s are signed, then every session which expires locally is revoked with the
+ * {@link CertificateSigner}, as otherwise the still valid signature would restore the session on its next use
+ * </p>
+ * 
+ * <p>
+ * Note: This is an internal object which is not to be passed to clients
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class SessionExpiryWheel {
+
+	private static final Logger logger = LoggerFactory.getLogger(SessionExpiryWheel.class);
+
+	/**
+	 * the number of buckets in the wheel
+	 */
+	private static final int WHEEL_SIZE = 512;
+
+	/**
+	 * the duration of one tick in milliseconds
+	 */
+	private static final long TICK_DURATION = 1000L;
+
+	private final SessionRegistry sessionRegistry;
+	private final SessionStore sessionStore;
+	private final CertificateSigner certificateSigner;
+	private final long idleTimeout;
+	private final long absoluteTimeout;
+
+	private final ConcurrentLinkedQueue<PrivilegeContext>[] buckets;
+	private volatile long currentTick;
+
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Default constructor
+	 * 
+	 * @param sessionRegistry
+	 *            the {@link SessionRegistry} from which expired sessions are removed
+	 * @param sessionStore
+	 *            the {@link SessionStore} in which the sessions are stored
+	 * @param idleTimeout
+	 *            the time in milliseconds after which a session which has not been accessed expires, 0 for no idle
+	 *            timeout
+	 * @param absoluteTimeout
+	 *            the time in milliseconds after login after which a session expires regardless of its use, 0 for no
+	 *            absolute timeout
+	 */
+	public SessionExpiryWheel(SessionRegistry sessionRegistry, SessionStore sessionStore, long idleTimeout,
+			long absoluteTimeout) {
+		this(sessionRegistry, sessionStore, null, idleTimeout, absoluteTimeout);
+	}
+
+	/**
+	 * Constructor for sessions with signed {@link Certificate}s
+	 * 
+	 * @param sessionRegistry
+	 *            the {@link SessionRegistry} from which expired sessions are removed
+	 * @param sessionStore
+	 *            the {@link SessionStore} in which the sessions are stored
+	 * @param certificateSigner
+	 *            the {@link CertificateSigner} with which expired sessions are revoked, null if the {@link Certificate}s
+	 *            are not signed
+	 * @param idleTimeout
+	 *            the time in milliseconds after which a session which has not been accessed expires, 0 for no idle
+	 *            timeout
+	 * @param absoluteTimeout
+	 *            the time in milliseconds after login after which a session expires regardless of its use, 0 for no
+	 *            absolute timeout
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public SessionExpiryWheel(SessionRegistry sessionRegistry, SessionStore sessionStore,
+			CertificateSigner certificateSigner, long idleTimeout, long absoluteTimeout) {
+		this.sessionRegistry = sessionRegistry;
+		this.sessionStore = sessionStore;
+		this.certificateSigner = certificateSigner;
+		this.idleTimeout = idleTimeout;
+		this.absoluteTimeout = absoluteTimeout;
+
+		this.buckets = new ConcurrentLinkedQueue[WHEEL_SIZE];
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			this.buckets[i] = new ConcurrentLinkedQueue<PrivilegeContext>();
+		}
+		this.currentTick = System.currentTimeMillis() / TICK_DURATION;
+	}
+
+	/**
+	 * @return true if either an idle or an absolute timeout is configured
+	 */
+	public boolean isEnabled() {
+		return this.idleTimeout > 0 || this.absoluteTimeout > 0;
+	}
+
+	/**
+	 * Returns the time at which the session of the given {@link Certificate} expires
+	 * 
+	 * @param certificate
+	 *            the {@link Certificate} of the session
+	 * 
+	 * @return the time in milliseconds at which the session expires, or {@link Long#MAX_VALUE} if it never expires
+	 */
+	public long getExpiryTime(Certificate certificate) {
+		long expiryTime = Long.MAX_VALUE;
+		if (this.idleTimeout > 0)
+			expiryTime = certificate.getLastAccess() + this.idleTimeout;
+		if (this.absoluteTimeout > 0)
+			expiryTime = Math.min(expiryTime, certificate.getLoginTime() + this.absoluteTimeout);
+		return expiryTime;
+	}
+
+	/**
+	 * Returns true if the session of the given {@link Certificate} has expired at the given time
+	 * 
+	 * @param certificate
+	 *            the {@link Certificate} of the session
+	 * @param now
+	 *            the current time in milliseconds
+	 * 
+	 * @return true if the session has expired
+	 */
+	public boolean isExpired(Certificate certificate, long now) {
+		return getExpiryTime(certificate) <= now;
+	}
+
+	/**
+	 * Schedules the given {@link PrivilegeContext} for expiry. Nothing is done if no timeout is configured
+	 * 
+	 * @param privilegeContext
+	 *            the {@link PrivilegeContext} of the session to expire
+	 */
+	public void schedule(PrivilegeContext privilegeContext) {
+		if (!isEnabled())
+			return;
+		schedule(privilegeContext, getExpiryTime(privilegeContext.getCertificate()));
+	}
+
+	private void schedule(PrivilegeContext privilegeContext, long expiryTime) {
+
+		// never schedule into a tick which has already been processed
+		long tick = Math.max(expiryTime / TICK_DURATION, this.currentTick + 1);
+		this.buckets[(int) (tick % WHEEL_SIZE)].add(privilegeContext);
+	}
+
+	/**
+	 * Starts the background thread which evicts the expired sessions. Nothing is done if no timeout is configured
+	 */
+	public synchronized void start() {
+		if (!isEnabled() || this.executor != null)
+			return;
+
+		this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "PrivilegeSessionExpiry"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		this.executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					advance(System.currentTimeMillis());
+				} catch (RuntimeException e) {
+					logger.error("Failed to evict expired sessions", e); //$NON-NLS-1$
+				}
+			}
+		}, TICK_DURATION, TICK_DURATION, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the background thread
+	 */
+	public synchronized void stop() {
+		if (this.executor != null) {
+			this.executor.shutdownNow();
+			this.executor = null;
+		}
+	}
+
+	/**
+	 * Advances the wheel up to the given time, evicting all sessions which have expired in the passed ticks
+	 * 
+	 * @param now
+	 *            the current time in milliseconds
+	 */
+	void advance(long now) {
+
+		long nowTick = now / TICK_DURATION;
+
+		// if we fell behind by more than one revolution, then every bucket needs to be processed only once
+		long fromTick = Math.max(this.currentTick + 1, nowTick - WHEEL_SIZE + 1);
+		for (long tick = fromTick; tick <= nowTick; tick++) {
+
+			// first drain the bucket, so that sessions rescheduled into the same bucket are not seen twice
+			ConcurrentLinkedQueue<PrivilegeContext> bucket = this.buckets[(int) (tick % WHEEL_SIZE)];
+			List<PrivilegeContext> privilegeContexts = new ArrayList<PrivilegeContext>();
+			PrivilegeContext privilegeContext;
+			while ((privilegeContext = bucket.poll()) != null) {
+				privilegeContexts.add(privilegeContext);
+			}
+
+			this.currentTick = tick;
+
+			for (PrivilegeContext ctx : privilegeContexts) {
+				try {
+					expireOrReschedule(ctx, now);
+				} catch (RuntimeException e) {
+					String msg = "Failed to expire session {0}"; //$NON-NLS-1$
+					logger.error(MessageFormat.format(msg, ctx.getCertificate().getSessionId()), e);
+				}
+			}
+		}
+	}
+
+	private void expireOrReschedule(PrivilegeContext privilegeContext, long now) {
+
+		// ignore sessions which have been invalidated in the mean time
+		Certificate certificate = privilegeContext.getCertificate();
+		if (this.sessionRegistry.get(certificate.getSessionId()) != privilegeContext)
+			return;
+
+		String sessionId = certificate.getSessionId();
+		long expiryTime = getExpiryTime(certificate);
+		if (expiryTime > now) {
+
+			// the session is still in use, so publish the last access, unless it was invalidated on another node
+			if (this.idleTimeout > 0) {
+				Certificate storedCertificate = this.sessionStore.load(sessionId);
+				if (storedCertificate == null) {
+					this.sessionRegistry.remove(privilegeContext);
+					return;
+				}
+				if (storedCertificate.getLastAccess() < certificate.getLastAccess())
+					this.sessionStore.store(certificate);
+			}
+
+			schedule(privilegeContext, expiryTime);
+
+		} else if (this.sessionRegistry.remove(privilegeContext)) {
+
+			if (this.certificateSigner != null)
+				this.certificateSigner.revoke(certificate);
+
+			// the session might still be in use on another node
+			Certificate storedCertificate = this.sessionStore.load(sessionId);
+			if (storedCertificate == null || isExpired(storedCertificate, now)) {
+				this.sessionStore.remove(sessionId);
+				String msg = "Session {0} of user {1} expired."; //$NON-NLS-1$
+				logger.info(MessageFormat.format(msg, sessionId, certificate.getUsername()));
+			}
+		}
+	}
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.handler;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.model.Certificate;
+import ch.eitchnet.privilege.model.PrivilegeContext;
+
+/**
+ * <p>
+ * The {@link SessionRegistry} keeps a reference to all active sessions, i.e. the {@link PrivilegeContext} of every
+ * logged in user, keyed by the session id of the user's {@link Certificate}. Only numeric session ids are accepted
+ * </p>
+ * 
+ * <p>
+ * The sessions are spread over a number of shards, each being a {@link ConcurrentHashMap}, so that lookups never block
+ * and modifications only contend with other modifications on the same shard. The number of shards is derived from the
+ * number of available processors. The session ids are used as keys as they are, so that a lookup neither parses the
+ * session id nor allocates a key object
+ * </p>
+ * 
+ * <p>
+ * Additionally the sessions are indexed by username and by the names of the user's roles, so that the sessions of a
+ * single user or of the users of a role can be found without iterating over all sessions
+ * </p>
+ * 
+ * <p>
+ * Note: This is an internal object which is not to be passed to clients
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class SessionRegistry {
+
+	/**
+	 * the maximum number of shards
+	 */
+	private static final int MAX_SHARDS = 1 << 12;
+
+	private final ConcurrentHashMap<String, PrivilegeContext>[] shards;
+	private final int shardMask;
+
+	private final ConcurrentHashMap<String, Set<PrivilegeContext>> userSessions;
+	private final ConcurrentHashMap<String, Set<PrivilegeContext>> roleSessions;
+
+	/**
+	 * Default constructor creating a shard count based on the number of available processors
+	 */
+	public SessionRegistry() {
+		this(Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	/**
+	 * Constructs a {@link SessionRegistry} with the given number of shards. The value is rounded up to the next power
+	 * of two
+	 * 
+	 * @param nrOfShards
+	 *            the number of shards over which to distribute the sessions
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public SessionRegistry(int nrOfShards) {
+
+		int size = 1;
+		while (size < nrOfShards && size < MAX_SHARDS) {
+			size <<= 1;
+		}
+
+		this.shards = new ConcurrentHashMap[size];
+		for (int i = 0; i < size; i++) {
+			this.shards[i] = new ConcurrentHashMap<String, PrivilegeContext>();
+		}
+		this.shardMask = size - 1;
+		this.userSessions = new ConcurrentHashMap<String, Set<PrivilegeContext>>();
+		this.roleSessions = new ConcurrentHashMap<String, Set<PrivilegeContext>>();
+	}
+
+	/**
+	 * Parses the given session id of a {@link Certificate} to the numeric key used in this registry
+	 * 
+	 * @param sessionId
+	 *            the session id to parse
+	 * 
+	 * @return the numeric session id, or -1 if the session id is not a valid numeric session id
+	 */
+	public static long toSessionKey(String sessionId) {
+
+		// don't use Long.parseLong() as invalid session ids would lead to an exception being thrown
+		int length = sessionId.length();
+		if (length == 0 || length > 19)
+			return -1;
+
+		long key = 0;
+		for (int i = 0; i < length; i++) {
+			char c = sessionId.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			int digit = c - '0';
+			if (key > (Long.MAX_VALUE - digit) / 10)
+				return -1;
+			key = key * 10 + digit;
+		}
+
+		return key;
+	}
+
+	private ConcurrentHashMap<String, PrivilegeContext> shard(String sessionId) {
+		int hash = sessionId.hashCode();
+		hash ^= (hash >>> 16);
+		return this.shards[hash & this.shardMask];
+	}
+
+	/**
+	 * Returns the {@link PrivilegeContext} for the given session id
+	 * 
+	 * @param sessionId
+	 *            the session id of the {@link Certificate}
+	 * 
+	 * @return the {@link PrivilegeContext} or null if no session exists for the given session id
+	 */
+	public PrivilegeContext get(String sessionId) {
+		if (sessionId == null)
+			return null;
+		return shard(sessionId).get(sessionId);
+	}
+
+	/**
+	 * Registers the given {@link PrivilegeContext} by the session id of its {@link Certificate}, replacing any existing
+	 * session with the same id
+	 * 
+	 * @param privilegeContext
+	 *            the {@link PrivilegeContext} to register
+	 * 
+	 * @return the previously registered {@link PrivilegeContext}, or null if none was registered
+	 */
+	public PrivilegeContext put(PrivilegeContext privilegeContext) {
+		String sessionId = sessionIdOf(privilegeContext);
+		PrivilegeContext previousContext = shard(sessionId).put(sessionId, privilegeContext);
+		index(privilegeContext);
+		if (previousContext != null)
+			unindex(previousContext);
+		return previousContext;
+	}
+
+	/**
+	 * Registers the given {@link PrivilegeContext} by the session id of its {@link Certificate}, but only if no session
+	 * is registered yet for this session id
+	 * 
+	 * @param privilegeContext
+	 *            the {@link PrivilegeContext} to register
+	 * 
+	 * @return the already registered {@link PrivilegeContext}, or null if the given {@link PrivilegeContext} was
+	 *         registered
+	 */
+	public PrivilegeContext putIfAbsent(PrivilegeContext privilegeContext) {
+		String sessionId = sessionIdOf(privilegeContext);
+		PrivilegeContext existingContext = shard(sessionId).putIfAbsent(sessionId, privilegeContext);
+		if (existingContext == null)
+			index(privilegeContext);
+		return existingContext;
+	}
+
+	/**
+	 * Replaces the given registered {@link PrivilegeContext} with the new {@link PrivilegeContext} for the same session,
+	 * but only if the old {@link PrivilegeContext} is still registered
+	 * 
+	 * @param oldContext
+	 *            the currently registered {@link PrivilegeContext}
+	 * @param newContext
+	 *            the {@link PrivilegeContext} to register instead
+	 * 
+	 * @return true if the {@link PrivilegeContext} was replaced, false if the old {@link PrivilegeContext} was not
+	 *         registered anymore
+	 */
+	public boolean replace(PrivilegeContext oldContext, PrivilegeContext newContext) {
+		String sessionId = sessionIdOf(oldContext);
+		if (!sessionId.equals(sessionIdOf(newContext))) {
+			String msg = "The session id {0} of the new context does not match the session id {1}!"; //$NON-NLS-1$
+			msg = MessageFormat.format(msg, newContext.getCertificate().getSessionId(), oldContext.getCertificate()
+					.getSessionId());
+			throw new PrivilegeException(msg);
+		}
+
+		if (!shard(sessionId).replace(sessionId, oldContext, newContext))
+			return false;
+		index(newContext);
+		unindex(oldContext);
+		return true;
+	}
+
+	/**
+	 * Removes the session with the given session id
+	 * 
+	 * @param sessionId
+	 *            the session id of the {@link Certificate}
+	 * 
+	 * @return the removed {@link PrivilegeContext}, or null if no session existed for the given session id
+	 */
+	public PrivilegeContext remove(String sessionId) {
+		if (sessionId == null)
+			return null;
+		PrivilegeContext privilegeContext = shard(sessionId).remove(sessionId);
+		if (privilegeContext != null)
+			unindex(privilegeContext);
+		return privilegeContext;
+	}
+
+	/**
+	 * Removes the given {@link PrivilegeContext}, but only if it is still the registered context for its session id
+	 * 
+	 * @param privilegeContext
+	 *            the {@link PrivilegeContext} to remove
+	 * 
+	 * @return true if the {@link PrivilegeContext} was removed, false if it was not registered anymore
+	 */
+	public boolean remove(PrivilegeContext privilegeContext) {
+		String sessionId = sessionIdOf(privilegeContext);
+		if (!shard(sessionId).remove(sessionId, privilegeContext))
+			return false;
+		unindex(privilegeContext);
+		return true;
+	}
+
+	/**
+	 * Returns the currently registered {@link PrivilegeContext}s of the user with the given username
+	 * 
+	 * @param username
+	 *            the username of the user for which the sessions are to be returned
+	 * 
+	 * @return a list of the currently registered {@link PrivilegeContext}s of the user, which is empty if the user has
+	 *         no session
+	 */
+	public List<PrivilegeContext> getSessions(String username) {
+		Set<PrivilegeContext> sessions = this.userSessions.get(username);
+		if (sessions == null)
+			return Collections.emptyList();
+		return new ArrayList<PrivilegeContext>(sessions);
+	}
+
+	/**
+	 * Returns the currently registered {@link PrivilegeContext}s of the users which have the role with the given name
+	 * 
+	 * @param roleName
+	 *            the name of the role for which the sessions are to be returned
+	 * 
+	 * @return a list of the currently registered {@link PrivilegeContext}s of the users with the role, which is empty if
+	 *         no user with the role has a session
+	 */
+	public List<PrivilegeContext> getRoleSessions(String roleName) {
+		Set<PrivilegeContext> sessions = this.roleSessions.get(roleName);
+		if (sessions == null)
+			return Collections.emptyList();
+		return new ArrayList<PrivilegeContext>(sessions);
+	}
+
+	/**
+	 * @return the number of currently registered sessions
+	 */
+	public int size() {
+		int size = 0;
+		for (ConcurrentHashMap<String, PrivilegeContext> shard : this.shards) {
+			size += shard.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Returns a weakly consistent snapshot of all currently registered {@link PrivilegeContext}s
+	 * 
+	 * @return a list of all currently registered {@link PrivilegeContext}s
+	 */
+	public List<PrivilegeContext> getAll() {
+		List<PrivilegeContext> privilegeContexts = new ArrayList<PrivilegeContext>(size());
+		for (ConcurrentHashMap<String, PrivilegeContext> shard : this.shards) {
+			privilegeContexts.addAll(shard.values());
+		}
+		return privilegeContexts;
+	}
+
+	private void index(PrivilegeContext privilegeContext) {
+		index(this.userSessions, privilegeContext.getUsername(), privilegeContext);
+		Set<String> roleNames = privilegeContext.getUserRep().getRoles();
+		if (roleNames != null) {
+			for (String roleName : roleNames) {
+				index(this.roleSessions, roleName, privilegeContext);
+			}
+		}
+	}
+
+	private void unindex(PrivilegeContext privilegeContext) {
+		unindex(this.userSessions, privilegeContext.getUsername(), privilegeContext);
+		Set<String> roleNames = privilegeContext.getUserRep().getRoles();
+		if (roleNames != null) {
+			for (String roleName : roleNames) {
+				unindex(this.roleSessions, roleName, privilegeContext);
+			}
+		}
+	}
+
+	private void index(ConcurrentHashMap<String, Set<PrivilegeContext>> index, String key,
+			PrivilegeContext privilegeContext) {
+		while (true) {
+			Set<PrivilegeContext> sessions = index.get(key);
+			if (sessions == null) {
+				Set<PrivilegeContext> newSessions = Collections
+						.newSetFromMap(new ConcurrentHashMap<PrivilegeContext, Boolean>(4));
+				sessions = index.putIfAbsent(key, newSessions);
+				if (sessions == null)
+					sessions = newSessions;
+			}
+
+			// if the set was removed concurrently as it was empty, then add the session to the new set
+			sessions.add(privilegeContext);
+			if (index.get(key) == sessions)
+				return;
+		}
+	}
+
+	private void unindex(ConcurrentHashMap<String, Set<PrivilegeContext>> index, String key,
+			PrivilegeContext privilegeContext) {
+		Set<PrivilegeContext> sessions = index.get(key);
+		if (sessions == null)
+			return;
+
+		sessions.remove(privilegeContext);
+		if (sessions.isEmpty() && index.remove(key, sessions)) {
+
+			// a session might have been added before the set was removed, which then needs to be indexed again
+			for (PrivilegeContext session : sessions) {
+				if (get(sessionIdOf(session)) == session)
+					index(index, key, session);
+			}
+		}
+	}
+
+	private String sessionIdOf(PrivilegeContext privilegeContext) {
+		String sessionId = privilegeContext.getCertificate().getSessionId();
+		if (toSessionKey(sessionId) < 0) {
+			String msg = "The session id {0} is not a valid numeric session id!"; //$NON-NLS-1$
+			throw new PrivilegeException(MessageFormat.format(msg, sessionId));
+		}
+		return sessionId;
+	}
+}
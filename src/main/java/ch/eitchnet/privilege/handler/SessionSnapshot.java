@@ -0,0 +1,340 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.handler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.model.Certificate;
+import ch.eitchnet.privilege.model.PrivilegeContext;
+
+/**
+ * <p>
+ * The {@link SessionSnapshot} writes the {@link Certificate}s of the sessions in a {@link SessionRegistry} to a
+ * compact binary file and reads them back, so that the sessions survive a restart and the clients do not all need to
+ * authenticate again at the same time
+ * </p>
+ * 
+ * <p>
+ * Only the {@link Certificate}s are written, not the {@link PrivilegeContext}s, as these are rebuilt from the current
+ * model when the session is used again. The sessions of system users and the session data of the {@link Certificate}s
+ * are not written. As the file contains the authentication tokens, it is only readable by the owner
+ * </p>
+ * 
+ * <p>
+ * Sessions which were read from the snapshot are only registered in the {@link SessionRegistry} when they are used
+ * again. Until then they are taken from the {@link SessionStore}, so that they are not lost if the snapshot is written
+ * again before they are used
+ * </p>
+ * 
+ * <p>
+ * Note: This is an internal object which is not to be passed to clients
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class SessionSnapshot {
+
+	private static final Logger logger = LoggerFactory.getLogger(SessionSnapshot.class);
+
+	/**
+	 * the first bytes of a snapshot file: PRSS
+	 */
+	private static final int MAGIC = 0x50525353;
+
+	/**
+	 * the version of the file format
+	 */
+	private static final int VERSION = 1;
+
+	private final File snapshotFile;
+	private final SessionRegistry sessionRegistry;
+	private final SessionStore sessionStore;
+	private final SessionExpiryWheel sessionExpiryWheel;
+	private final Map<String, Certificate> restoredCertificates;
+
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Default constructor
+	 * 
+	 * @param snapshotFile
+	 *            the file to which the snapshot is written
+	 * @param sessionRegistry
+	 *            the {@link SessionRegistry} of which the sessions are written
+	 * @param sessionStore
+	 *            the {@link SessionStore} in which the read sessions are kept until they are used again
+	 * @param sessionExpiryWheel
+	 *            the {@link SessionExpiryWheel} with which the expiry of sessions which were not used again is checked
+	 */
+	public SessionSnapshot(File snapshotFile, SessionRegistry sessionRegistry, SessionStore sessionStore,
+			SessionExpiryWheel sessionExpiryWheel) {
+		this.snapshotFile = snapshotFile;
+		this.sessionRegistry = sessionRegistry;
+		this.sessionStore = sessionStore;
+		this.sessionExpiryWheel = sessionExpiryWheel;
+		this.restoredCertificates = new ConcurrentHashMap<String, Certificate>();
+	}
+
+	/**
+	 * Starts a background thread which writes a snapshot in the given interval
+	 * 
+	 * @param interval
+	 *            the interval in milliseconds in which to write a snapshot
+	 */
+	public synchronized void start(long interval) {
+		if (this.executor != null)
+			return;
+
+		this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "PrivilegeSessionSnapshot"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		this.executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					write();
+				} catch (RuntimeException e) {
+					logger.error("Failed to write session snapshot", e); //$NON-NLS-1$
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the background thread
+	 */
+	public synchronized void stop() {
+		if (this.executor != null) {
+			this.executor.shutdownNow();
+			this.executor = null;
+		}
+	}
+
+	/**
+	 * Writes the {@link Certificate}s of all sessions currently in the {@link SessionRegistry} to the snapshot file,
+	 * replacing the previous snapshot. Sessions which were read from the previous snapshot and have not been used since
+	 * are written as well, unless they were invalidated or have expired
+	 * 
+	 * @return the number of written sessions
+	 */
+	public synchronized int write() {
+
+		List<Certificate> certificates = new ArrayList<Certificate>();
+		for (PrivilegeContext privilegeContext : this.sessionRegistry.getAll()) {
+			if (!privilegeContext.isSystemUser())
+				certificates.add(privilegeContext.getCertificate());
+		}
+
+		long now = System.currentTimeMillis();
+		for (String sessionId : this.restoredCertificates.keySet()) {
+
+			// sessions which were used again are already written from the registry
+			if (this.sessionRegistry.get(sessionId) != null) {
+				this.restoredCertificates.remove(sessionId);
+				continue;
+			}
+
+			// the store contains the latest state, and no longer contains invalidated sessions
+			Certificate certificate = this.sessionStore.load(sessionId);
+			if (certificate == null || this.sessionExpiryWheel.isExpired(certificate, now))
+				this.restoredCertificates.remove(sessionId);
+			else
+				certificates.add(certificate);
+		}
+
+		File tmpFile = new File(this.snapshotFile.getPath() + ".tmp"); //$NON-NLS-1$
+		try {
+
+			createOwnerOnlyFile(tmpFile);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(certificates.size());
+				for (Certificate certificate : certificates) {
+					writeCertificate(out, certificate);
+				}
+			} finally {
+				out.close();
+			}
+
+			// renaming fails on some platforms if the target exists
+			if (!tmpFile.renameTo(this.snapshotFile)
+					&& !(this.snapshotFile.delete() && tmpFile.renameTo(this.snapshotFile))) {
+				String msg = "Failed to rename {0} to {1}"; //$NON-NLS-1$
+				throw new IOException(MessageFormat.format(msg, tmpFile, this.snapshotFile));
+			}
+
+		} catch (IOException e) {
+			String msg = "Failed to write session snapshot to {0}"; //$NON-NLS-1$
+			msg = MessageFormat.format(msg, this.snapshotFile.getAbsolutePath());
+			throw new PrivilegeException(msg, e);
+		}
+
+		String msg = "Wrote snapshot of {0} sessions to {1}"; //$NON-NLS-1$
+		logger.info(MessageFormat.format(msg, certificates.size(), this.snapshotFile.getAbsolutePath()));
+		return certificates.size();
+	}
+
+	/**
+	 * Reads the {@link Certificate}s from the snapshot file. The read {@link Certificate}s are remembered, so that they
+	 * are written again by {@link #write()} until they are used, invalidated or expire. A snapshot which can not be
+	 * read is ignored, as the sessions are only lost and the clients need to authenticate again
+	 * 
+	 * @return the {@link Certificate}s of the snapshot, which is empty if no snapshot file exists or it can not be read
+	 */
+	public synchronized List<Certificate> read() {
+
+		List<Certificate> certificates = new ArrayList<Certificate>();
+		if (!this.snapshotFile.isFile())
+			return certificates;
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.snapshotFile)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					String msg = "Ignoring file {0} as it is not a session snapshot of version {1}"; //$NON-NLS-1$
+					logger.error(MessageFormat.format(msg, this.snapshotFile.getAbsolutePath(), VERSION));
+					return certificates;
+				}
+
+				// the counts are not trusted to allocate memory, a too large count ends with an EOFException
+				int size = in.readInt();
+				if (size < 0)
+					throw new IOException(MessageFormat.format("Illegal number of sessions {0}", size)); //$NON-NLS-1$
+				for (int i = 0; i < size; i++) {
+					certificates.add(readCertificate(in));
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException | RuntimeException e) {
+			String msg = "Ignoring session snapshot {0} as it could not be read"; //$NON-NLS-1$
+			logger.error(MessageFormat.format(msg, this.snapshotFile.getAbsolutePath()), e);
+			return new ArrayList<Certificate>();
+		}
+
+		for (Certificate certificate : certificates) {
+			this.restoredCertificates.put(certificate.getSessionId(), certificate);
+		}
+
+		return certificates;
+	}
+
+	/**
+	 * Creates the given file, if it does not yet exist, and restricts it so that only the owner may read and write it.
+	 * This is to be done before writing authentication tokens to the file
+	 * 
+	 * @param file
+	 *            the file to create
+	 * 
+	 * @throws IOException
+	 *             if the file can not be created
+	 */
+	static void createOwnerOnlyFile(File file) throws IOException {
+		if (!file.exists() && !file.createNewFile())
+			throw new IOException(MessageFormat.format("Could not create {0}", file)); //$NON-NLS-1$
+		file.setReadable(false, false);
+		file.setWritable(false, false);
+		file.setReadable(true, true);
+		file.setWritable(true, true);
+	}
+
+	static void writeCertificate(DataOutputStream out, Certificate certificate) throws IOException {
+		out.writeUTF(certificate.getSessionId());
+		out.writeLong(certificate.getLoginTime());
+		out.writeLong(certificate.getLastAccess());
+		out.writeUTF(certificate.getUsername());
+		writeNullable(out, certificate.getFirstname());
+		writeNullable(out, certificate.getLastname());
+		out.writeUTF(certificate.getAuthToken());
+
+		Locale locale = certificate.getLocale();
+		out.writeUTF(locale.getLanguage());
+		out.writeUTF(locale.getCountry());
+		out.writeUTF(locale.getVariant());
+
+		Map<String, String> propertyMap = certificate.getPropertyMap();
+		out.writeInt(propertyMap.size());
+		for (Entry<String, String> entry : propertyMap.entrySet()) {
+			out.writeUTF(entry.getKey());
+			writeNullable(out, entry.getValue());
+		}
+	}
+
+	static Certificate readCertificate(DataInputStream in) throws IOException {
+		String sessionId = in.readUTF();
+		long loginTime = in.readLong();
+		long lastAccess = in.readLong();
+		String username = in.readUTF();
+		String firstname = readNullable(in);
+		String lastname = readNullable(in);
+		String authToken = in.readUTF();
+		Locale locale = new Locale(in.readUTF(), in.readUTF(), in.readUTF());
+
+		int nrOfProperties = in.readInt();
+		if (nrOfProperties < 0)
+			throw new IOException(MessageFormat.format("Illegal number of properties {0}", nrOfProperties)); //$NON-NLS-1$
+		Map<String, String> propertyMap = new HashMap<String, String>(Math.min(nrOfProperties, 16) * 2);
+		for (int i = 0; i < nrOfProperties; i++) {
+			propertyMap.put(in.readUTF(), readNullable(in));
+		}
+
+		Certificate certificate = new Certificate(sessionId, loginTime, username, firstname, lastname, authToken,
+				locale, propertyMap);
+		certificate.setLastAccess(lastAccess);
+		return certificate;
+	}
+
+	private static void writeNullable(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+
+	private static String readNullable(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
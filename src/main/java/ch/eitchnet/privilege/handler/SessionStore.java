@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.handler;
+
+import java.util.Map;
+
+import ch.eitchnet.privilege.model.Certificate;
+
+/**
+ * <p>
+ * The {@link SessionStore} keeps the {@link Certificate}s of all active sessions, so that a session can be restored by
+ * a {@link PrivilegeHandler} which does not have the session in memory, e.g. because the user logged in on another
+ * node, or because the session was evicted after being idle
+ * </p>
+ * 
+ * <p>
+ * The {@link PrivilegeHandler} only accesses the {@link SessionStore} on login and logout, when a session is not known
+ * locally, and when a session is touched by the expiry of sessions. Validating a {@link Certificate} of a known session
+ * never accesses the {@link SessionStore}
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public interface SessionStore {
+
+	/**
+	 * Stores the given {@link Certificate}, replacing any {@link Certificate} with the same session id
+	 * 
+	 * @param certificate
+	 *            the {@link Certificate} to store
+	 */
+	public void store(Certificate certificate);
+
+	/**
+	 * Returns the {@link Certificate} with the given session id
+	 * 
+	 * @param sessionId
+	 *            the session id of the {@link Certificate} to return
+	 * 
+	 * @return the {@link Certificate}, or null if no session is stored with the given session id
+	 */
+	public Certificate load(String sessionId);
+
+	/**
+	 * Removes the {@link Certificate} with the given session id
+	 * 
+	 * @param sessionId
+	 *            the session id of the {@link Certificate} to remove
+	 */
+	public void remove(String sessionId);
+
+	/**
+	 * Initialize the concrete {@link SessionStore}. The passed parameter map contains any configuration the concrete
+	 * {@link SessionStore} might need
+	 * 
+	 * @param parameterMap
+	 *            a map containing configuration properties
+	 */
+	public void initialize(Map<String, String> parameterMap);
+}
@@ -19,6 +19,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.text.MessageFormat;
+import java.util.HashMap;
 import java.util.Map;
 
 import ch.eitchnet.privilege.base.PrivilegeException;
@@ -26,6 +27,7 @@ import ch.eitchnet.privilege.handler.DefaultPrivilegeHandler;
 import ch.eitchnet.privilege.handler.EncryptionHandler;
 import ch.eitchnet.privilege.handler.PersistenceHandler;
 import ch.eitchnet.privilege.handler.PrivilegeHandler;
+import ch.eitchnet.privilege.handler.SessionStore;
 import ch.eitchnet.privilege.model.internal.PrivilegeContainerModel;
 import ch.eitchnet.privilege.policy.PrivilegePolicy;
 import ch.eitchnet.privilege.xml.PrivilegeConfigSaxReader;
@@ -123,12 +125,29 @@ public class PrivilegeInitializationHelper {
 			throw new PrivilegeException(msg, e);
 		}
 
+		// initialize session store, if one is configured
+		String sessionStoreClassName = containerModel.getSessionStoreClassName();
+		SessionStore sessionStore = null;
+		if (sessionStoreClassName != null) {
+			sessionStore = ClassHelper.instantiateClass(sessionStoreClassName);
+			parameterMap = containerModel.getSessionStoreParameterMap();
+			if (parameterMap == null)
+				parameterMap = new HashMap<String, String>();
+			try {
+				sessionStore.initialize(parameterMap);
+			} catch (Exception e) {
+				String msg = "SessionStore {0} could not be initialized"; //$NON-NLS-1$
+				msg = MessageFormat.format(msg, sessionStoreClassName);
+				throw new PrivilegeException(msg, e);
+			}
+		}
+
 		// initialize privilege handler
 		DefaultPrivilegeHandler privilegeHandler = new DefaultPrivilegeHandler();
 		parameterMap = containerModel.getParameterMap();
 		Map<String, Class<PrivilegePolicy>> policyMap = containerModel.getPolicies();
 		try {
-			privilegeHandler.initialize(parameterMap, encryptionHandler, persistenceHandler, policyMap);
+			privilegeHandler.initialize(parameterMap, encryptionHandler, persistenceHandler, sessionStore, policyMap);
 		} catch (Exception e) {
 			String msg = "PrivilegeHandler {0} could not be initialized"; //$NON-NLS-1$
 			msg = MessageFormat.format(msg, privilegeHandler.getClass().getName());
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.helper;
+
+import java.security.SecureRandom;
+
+/**
+ * <p>
+ * Generates the random tokens and session ids used for certificates. Each thread uses its own {@link SecureRandom}, so
+ * that concurrent logins do not contend on a single random source
+ * </p>
+ * 
+ * <p>
+ * Tokens are encoded using the URL and file name safe Base64 alphabet of RFC 4648 without padding, so they can be used
+ * in URLs, HTTP headers and cookies without further encoding
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public final class TokenGenerator {
+
+	/**
+	 * the default number of random bytes of a token, resulting in a token of 32 characters
+	 */
+	public static final int DEFAULT_TOKEN_BYTES = 24;
+
+	private static final char[] URL_SAFE_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_" //$NON-NLS-1$
+			.toCharArray();
+
+	private static final ThreadLocal<SecureRandom> SECURE_RANDOM = new ThreadLocal<SecureRandom>() {
+		@Override
+		protected SecureRandom initialValue() {
+			return new SecureRandom();
+		}
+	};
+
+	private TokenGenerator() {
+		// static helper
+	}
+
+	/**
+	 * Returns a new URL safe token with {@link #DEFAULT_TOKEN_BYTES} random bytes
+	 * 
+	 * @return the new token
+	 */
+	public static String nextToken() {
+		return nextToken(DEFAULT_TOKEN_BYTES);
+	}
+
+	/**
+	 * Returns a new URL safe token with the given number of random bytes
+	 * 
+	 * @param nrOfBytes
+	 *            the number of random bytes of the token
+	 * 
+	 * @return the new token
+	 */
+	public static String nextToken(int nrOfBytes) {
+		byte[] bytes = new byte[nrOfBytes];
+		SECURE_RANDOM.get().nextBytes(bytes);
+		return toUrlSafeString(bytes);
+	}
+
+	/**
+	 * Returns a new random session id, which is a positive long value
+	 * 
+	 * @return the new session id
+	 */
+	public static long nextSessionId() {
+		long sessionId;
+		do {
+			sessionId = SECURE_RANDOM.get().nextLong() & Long.MAX_VALUE;
+		} while (sessionId == 0L);
+		return sessionId;
+	}
+
+	/**
+	 * Compares the two given tokens in constant time, i.e. the time taken does not depend on the position of the first
+	 * differing character, so that a token can not be guessed by measuring the time of failed comparisons. Tokens of
+	 * different lengths are not compared at all, as the length of a token is not secret
+	 * 
+	 * @param expected
+	 *            the expected token
+	 * @param actual
+	 *            the token to compare with the expected token
+	 * 
+	 * @return true if both tokens are equal
+	 */
+	public static boolean constantTimeEquals(String expected, String actual) {
+		if (expected == null || actual == null)
+			return expected == actual;
+
+		int length = expected.length();
+		if (actual.length() != length)
+			return false;
+
+		int result = 0;
+		for (int i = 0; i < length; i++) {
+			result |= expected.charAt(i) ^ actual.charAt(i);
+		}
+		return result == 0;
+	}
+
+	/**
+	 * Encodes the given bytes using the URL and file name safe Base64 alphabet without padding
+	 * 
+	 * @param bytes
+	 *            the bytes to encode
+	 * 
+	 * @return the encoded string
+	 */
+	public static String toUrlSafeString(byte[] bytes) {
+
+		char[] chars = new char[(bytes.length * 4 + 2) / 3];
+		int charIndex = 0;
+
+		int i = 0;
+		for (; i + 2 < bytes.length; i += 3) {
+			int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+			chars[charIndex++] = URL_SAFE_ALPHABET[(bits >>> 18) & 0x3f];
+			chars[charIndex++] = URL_SAFE_ALPHABET[(bits >>> 12) & 0x3f];
+			chars[charIndex++] = URL_SAFE_ALPHABET[(bits >>> 6) & 0x3f];
+			chars[charIndex++] = URL_SAFE_ALPHABET[bits & 0x3f];
+		}
+
+		int remaining = bytes.length - i;
+		if (remaining == 1) {
+			int bits = (bytes[i] & 0xff) << 16;
+			chars[charIndex++] = URL_SAFE_ALPHABET[(bits >>> 18) & 0x3f];
+			chars[charIndex++] = URL_SAFE_ALPHABET[(bits >>> 12) & 0x3f];
+		} else if (remaining == 2) {
+			int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8;
+			chars[charIndex++] = URL_SAFE_ALPHABET[(bits >>> 18) & 0x3f];
+			chars[charIndex++] = URL_SAFE_ALPHABET[(bits >>> 12) & 0x3f];
+			chars[charIndex++] = URL_SAFE_ALPHABET[(bits >>> 6) & 0x3f];
+		}
+
+		return new String(chars);
+	}
+}
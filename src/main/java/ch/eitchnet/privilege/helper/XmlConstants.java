@@ -58,6 +58,11 @@ public class XmlConstants {
 	 */
 	public static final String XML_HANDLER_ENCRYPTION = "EncryptionHandler";
 
+	/**
+	 * XML_SESSION_STORE = "SessionStore" :
+	 */
+	public static final String XML_SESSION_STORE = "SessionStore";
+
 	/**
 	 * XML_HANDLER_PRIVILEGE = "PrivilegeHandler" :
 	 */
@@ -168,6 +173,11 @@ public class XmlConstants {
 	 */
 	public static final String XML_ATTR_POLICY = "policy";
 
+	/**
+	 * XML_ATTR_EXTENDS = "extends" :
+	 */
+	public static final String XML_ATTR_EXTENDS = "extends";
+
 	/**
 	 * XML_ATTR_USER_ID = "userId" :
 	 */
@@ -15,18 +15,32 @@
  */
 package ch.eitchnet.privilege.i18n;
 
+import java.text.MessageFormat;
+import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * <p>
+ * Access to the messages of Privilege, which are read from the PrivilegeMessages resource bundle
+ * </p>
+ * 
+ * <p>
+ * The templates are parsed only once per locale and key, and the parsed {@link MessageFormat} is then kept as a
+ * prototype. As {@link MessageFormat} is not thread safe, the prototype is cloned for every message, which is much
+ * cheaper than parsing the template again
+ * </p>
+ * 
  * @author Robert von Burg <eitch@eitchnet.ch>
- *
  */
 public class PrivilegeMessages {
 	private static final String BUNDLE_NAME = "PrivilegeMessages"; //$NON-NLS-1$
 
 	private static final ResourceBundle RESOURCE_BUNDLE = ResourceBundle.getBundle(BUNDLE_NAME);
 
+	private static final ConcurrentHashMap<Locale, ConcurrentHashMap<String, MessageFormat>> FORMATS = new ConcurrentHashMap<>();
+
 	private PrivilegeMessages() {
 	}
 
@@ -37,4 +51,64 @@ public class PrivilegeMessages {
 			return '!' + key + '!';
 		}
 	}
+
+	/**
+	 * Formats the message with the given key using the default locale
+	 * 
+	 * @param key
+	 *            the key of the message template
+	 * @param args
+	 *            the arguments to format into the template
+	 * 
+	 * @return the formatted message, or the key surrounded by exclamation marks if the key is not defined
+	 */
+	public static String format(String key, Object... args) {
+		return format(Locale.getDefault(), key, args);
+	}
+
+	/**
+	 * Formats the message with the given key using the given locale
+	 * 
+	 * @param locale
+	 *            the {@link Locale} for which to read the template
+	 * @param key
+	 *            the key of the message template
+	 * @param args
+	 *            the arguments to format into the template
+	 * 
+	 * @return the formatted message, or the key surrounded by exclamation marks if the key is not defined
+	 */
+	public static String format(Locale locale, String key, Object... args) {
+		MessageFormat prototype = getFormat(locale, key);
+		if (prototype == null)
+			return '!' + key + '!';
+		return ((MessageFormat) prototype.clone()).format(args);
+	}
+
+	private static MessageFormat getFormat(Locale locale, String key) {
+
+		ConcurrentHashMap<String, MessageFormat> formats = FORMATS.get(locale);
+		if (formats == null) {
+			ConcurrentHashMap<String, MessageFormat> newFormats = new ConcurrentHashMap<>();
+			formats = FORMATS.putIfAbsent(locale, newFormats);
+			if (formats == null)
+				formats = newFormats;
+		}
+
+		MessageFormat format = formats.get(key);
+		if (format == null) {
+			String template;
+			try {
+				template = ResourceBundle.getBundle(BUNDLE_NAME, locale).getString(key);
+			} catch (MissingResourceException e) {
+				return null;
+			}
+
+			// parsing the same template concurrently does no harm
+			format = new MessageFormat(template, locale);
+			formats.put(key, format);
+		}
+
+		return format;
+	}
 }
@@ -17,7 +17,6 @@ package ch.eitchnet.privilege.model;
 
 import java.io.Serializable;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 
@@ -45,10 +44,10 @@ public final class Certificate implements Serializable {
 	private final String authToken;
 
 	private Locale locale;
-	private long lastAccess;
+	private volatile long lastAccess;
 
 	private Map<String, String> propertyMap;
-	private Map<String, String> sessionDataMap;
+	private SessionDataMap sessionDataMap;
 
 	/**
 	 * Default constructor initializing with all information needed for this certificate
@@ -94,6 +93,7 @@ public final class Certificate implements Serializable {
 		this.firstname = firstname;
 		this.lastname = lastname;
 		this.authToken = authToken;
+		this.lastAccess = loginTime;
 
 		// if no locale is given, set default
 		if (locale == null)
@@ -106,7 +106,7 @@ public final class Certificate implements Serializable {
 		else
 			this.propertyMap = Collections.unmodifiableMap(propertyMap);
 
-		this.sessionDataMap = new HashMap<>();
+		this.sessionDataMap = new SessionDataMap();
 	}
 
 	/**
@@ -131,7 +131,8 @@ public final class Certificate implements Serializable {
 	}
 
 	/**
-	 * Returns a mutable {@link Map} for storing session relevant data
+	 * Returns a mutable {@link Map} for storing session relevant data. The map may be used by concurrent requests of the
+	 * same session and its size is bounded, as it is a {@link SessionDataMap}
 	 * 
 	 * @return the sessionDataMap
 	 */
@@ -199,6 +200,9 @@ public final class Certificate implements Serializable {
 	}
 
 	/**
+	 * Returns the time of the last access to the session of this {@link Certificate}. This is updated by the
+	 * {@link PrivilegeHandler} whenever the certificate is validated and is initially the login time
+	 * 
 	 * @return the lastAccess
 	 */
 	public long getLastAccess() {
@@ -83,4 +83,16 @@ public interface IPrivilege {
 	 */
 	public abstract boolean isDenied(String value);
 
+	/**
+	 * @return the allow and deny lists as compiled by a {@link ch.eitchnet.privilege.policy.CompilingPolicy}, or null
+	 *         if they were not compiled
+	 */
+	public abstract Object getCompiledRules();
+
+	/**
+	 * @param compiledRules
+	 *            the allow and deny lists as compiled by a {@link ch.eitchnet.privilege.policy.CompilingPolicy}
+	 */
+	public abstract void setCompiledRules(Object compiledRules);
+
 }
\ No newline at end of file
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.model;
+
+/**
+ * <p>
+ * A {@link Restrictable} which supplies the id of its privilege as resolved by {@link PrivilegeIds#idOf(String)}, so
+ * that the {@link PrivilegeContext} does not need to look up the privilege name on every check. The id is typically
+ * resolved once and kept in a constant:
+ * </p>
+ * 
+ * <pre>
+ * private static final int PRIVILEGE_ID = PrivilegeIds.idOf(PRIVILEGE_NAME);
+ * </pre>
+ * 
+ * <p>
+ * The id must be the id of the name returned by {@link #getPrivilegeName()}
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public interface IdentifiedRestrictable extends Restrictable {
+
+	/**
+	 * Returns the id of the {@link IPrivilege} which is to be used to validate privileges against
+	 * 
+	 * @return the id of the privilege as returned by {@link PrivilegeIds#idOf(String)} for {@link #getPrivilegeName()}
+	 */
+	public int getPrivilegeId();
+}
@@ -17,22 +17,61 @@ package ch.eitchnet.privilege.model;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Set;
 
 import ch.eitchnet.privilege.base.AccessDeniedException;
 import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.handler.AuditLog;
+import ch.eitchnet.privilege.handler.PrivilegeHandler;
 import ch.eitchnet.privilege.i18n.PrivilegeMessages;
+import ch.eitchnet.privilege.policy.BatchPrivilegePolicy;
+import ch.eitchnet.privilege.policy.DeterministicPolicy;
 import ch.eitchnet.privilege.policy.PrivilegePolicy;
+import ch.eitchnet.privilege.policy.StatefulPolicy;
 
 /**
  * This context gives access to a logged in user's privilege data e.g. the {@link UserRep}, {@link Certificate} and the
  * user's list of {@link PrivilegeRep}
  * 
  * <p>
+ * The privileges and their policies are kept in a {@link RoleSetView}, which is shared by all contexts of users with the
+ * same roles, so that a context costs little more than its {@link Certificate}
+ * </p>
+ * 
+ * <p>
+ * Optionally the decisions of {@link DeterministicPolicy}s on {@link Restrictable}s with a {@link String} privilege
+ * value are cached in a bounded {@link PrivilegeDecisionCache} of the {@link RoleSetView}. As the cache is replaced
+ * together with the privileges when the model changes, a cached decision is never outdated
+ * </p>
+ * 
+ * <p>
+ * The {@link RoleSetView} is immutable and is replaced as a whole when the roles of the user change, see
+ * {@link #refresh(RoleSetView, Map, long)}. Every method reads the {@link RoleSetView} only once, so that it sees
+ * consistent privileges without any lock, and existing references to this context see the new privileges on their next
+ * validation
+ * </p>
+ * 
+ * <p>
+ * The instances of {@link StatefulPolicy}s are not shared, but are kept by every context on its own
+ * </p>
+ * 
+ * <p>
+ * If an {@link AuditLog} is set, then the outcome of every {@link #validateAction(Restrictable)} is recorded in it
+ * </p>
+ * 
+ * <p>
+ * The capabilities of the user which do not depend on privileges, i.e. if the user is a privilege admin or a system
+ * user, are determined once when the context is built. As the context is rebuilt whenever the user changes, the
+ * {@link PrivilegeHandler} can check them without getting the user
+ * </p>
+ * 
+ * <p>
  * Note: This is an internal object which is not to be serialized to clients
  * </p>
  * 
@@ -46,15 +85,144 @@ public class PrivilegeContext {
 
 	private UserRep userRep;
 	private Certificate certificate;
-	private Map<String, IPrivilege> privileges;
-	private Map<String, PrivilegePolicy> policies;
+	private volatile RoleSetView roleSetView;
+	private volatile Map<String, PrivilegePolicy> statefulPolicies;
+	private volatile long modelVersion;
+	private AuditLog auditLog;
+	private final boolean privilegeAdmin;
+	private final boolean systemUser;
 
+	/**
+	 * Constructor for a context which does not share its privileges and policies with other contexts
+	 * 
+	 * @param userRep
+	 *            the {@link UserRep} of the user
+	 * @param certificate
+	 *            the {@link Certificate} of the session
+	 * @param privileges
+	 *            the privileges of the user by their name
+	 * @param policies
+	 *            the policies of the privileges by their name
+	 * 
+	 * @deprecated the {@link PrivilegeHandler} shares a {@link RoleSetView} between the contexts of all users with the
+	 *             same roles, use {@link #PrivilegeContext(UserRep, Certificate, RoleSetView, Map, long, AuditLog)}
+	 */
+	@Deprecated
 	public PrivilegeContext(UserRep userRep, Certificate certificate, Map<String, IPrivilege> privileges,
 			Map<String, PrivilegePolicy> policies) {
+		this(userRep, certificate, new RoleSetView(privileges, policies, 0), policies, 0L, null);
+	}
+
+	/**
+	 * Constructor for a context which shares the given {@link RoleSetView} with other contexts
+	 * 
+	 * @param userRep
+	 *            the {@link UserRep} of the user
+	 * @param certificate
+	 *            the {@link Certificate} of the session
+	 * @param roleSetView
+	 *            the {@link RoleSetView} of the user's roles
+	 * @param modelVersion
+	 *            the version of the model from which the {@link RoleSetView} was built
+	 */
+	public PrivilegeContext(UserRep userRep, Certificate certificate, RoleSetView roleSetView, long modelVersion) {
+		this(userRep, certificate, roleSetView, modelVersion, null);
+	}
+
+	/**
+	 * Constructor for a context which shares the given {@link RoleSetView} with other contexts and records the outcome
+	 * of its validations in the given {@link AuditLog}
+	 * 
+	 * @param userRep
+	 *            the {@link UserRep} of the user
+	 * @param certificate
+	 *            the {@link Certificate} of the session
+	 * @param roleSetView
+	 *            the {@link RoleSetView} of the user's roles
+	 * @param modelVersion
+	 *            the version of the model from which the {@link RoleSetView} was built
+	 * @param auditLog
+	 *            the {@link AuditLog} in which the validations are recorded, null if they are not to be recorded
+	 */
+	public PrivilegeContext(UserRep userRep, Certificate certificate, RoleSetView roleSetView, long modelVersion,
+			AuditLog auditLog) {
+		this(userRep, certificate, roleSetView, Collections.<String, PrivilegePolicy> emptyMap(), modelVersion,
+				auditLog);
+	}
+
+	/**
+	 * Constructor for a context which shares the given {@link RoleSetView} with other contexts, but has its own
+	 * instances of the {@link StatefulPolicy}s
+	 * 
+	 * @param userRep
+	 *            the {@link UserRep} of the user
+	 * @param certificate
+	 *            the {@link Certificate} of the session
+	 * @param roleSetView
+	 *            the {@link RoleSetView} of the user's roles
+	 * @param statefulPolicies
+	 *            the instances of the {@link StatefulPolicy}s of this context by their name, see
+	 *            {@link RoleSetView#getStatefulPolicyNames()}
+	 * @param modelVersion
+	 *            the version of the model from which the {@link RoleSetView} was built
+	 * @param auditLog
+	 *            the {@link AuditLog} in which the validations are recorded, null if they are not to be recorded
+	 */
+	public PrivilegeContext(UserRep userRep, Certificate certificate, RoleSetView roleSetView,
+			Map<String, PrivilegePolicy> statefulPolicies, long modelVersion, AuditLog auditLog) {
 		this.userRep = userRep;
 		this.certificate = certificate;
-		this.privileges = Collections.unmodifiableMap(new HashMap<String, IPrivilege>(privileges));
-		this.policies = Collections.unmodifiableMap(new HashMap<String, PrivilegePolicy>(policies));
+		this.statefulPolicies = statefulPolicies;
+		this.roleSetView = roleSetView;
+		this.modelVersion = modelVersion;
+		this.auditLog = auditLog;
+		this.privilegeAdmin = userRep.getRoles().contains(PrivilegeHandler.PRIVILEGE_ADMIN_ROLE);
+		this.systemUser = userRep.getUserState() == UserState.SYSTEM;
+	}
+
+	/**
+	 * Replaces the privileges and policies of this context, e.g. because a role of the user changed. Concurrent
+	 * validations either see the old or the new privileges
+	 * 
+	 * @param roleSetView
+	 *            the new {@link RoleSetView} of the user's roles
+	 * @param statefulPolicies
+	 *            the instances of the {@link StatefulPolicy}s of this context by their name, which must contain the
+	 *            instances of the current {@link RoleSetView} as well
+	 * @param modelVersion
+	 *            the version of the model from which the new {@link RoleSetView} was built
+	 */
+	public void refresh(RoleSetView roleSetView, Map<String, PrivilegePolicy> statefulPolicies, long modelVersion) {
+
+		// the policies are written first, so that a validation seeing the new view also sees its policies
+		this.statefulPolicies = statefulPolicies;
+		this.roleSetView = roleSetView;
+		this.modelVersion = modelVersion;
+	}
+
+	/**
+	 * Marks the privileges of this context as being up to date with the given version of the model, e.g. because the
+	 * model changed in a way which does not affect the user
+	 * 
+	 * @param modelVersion
+	 *            the current version of the model
+	 */
+	public void refresh(long modelVersion) {
+		this.modelVersion = modelVersion;
+	}
+
+	/**
+	 * @return the instances of the {@link StatefulPolicy}s of this context by their name
+	 */
+	public Map<String, PrivilegePolicy> getStatefulPolicies() {
+		return this.statefulPolicies;
+	}
+
+	/**
+	 * @return the {@link RoleSetView} with the privileges of this context
+	 */
+	public RoleSetView getRoleSetView() {
+		return this.roleSetView;
 	}
 
 	public UserRep getUserRep() {
@@ -69,17 +237,55 @@ public class PrivilegeContext {
 		return this.userRep.getUsername();
 	}
 
+	/**
+	 * @return true if the user has the role {@link PrivilegeHandler#PRIVILEGE_ADMIN_ROLE}
+	 */
+	public boolean isPrivilegeAdmin() {
+		return this.privilegeAdmin;
+	}
+
+	/**
+	 * @return true if the user is a system user, i.e. has the state {@link UserState#SYSTEM}
+	 */
+	public boolean isSystemUser() {
+		return this.systemUser;
+	}
+
+	/**
+	 * @return the version of the model from which this context was built, so that the
+	 *         {@link ch.eitchnet.privilege.handler.PrivilegeHandler} can detect that the context is outdated
+	 */
+	public long getModelVersion() {
+		return this.modelVersion;
+	}
+
+	/**
+	 * @return the number of decisions which were found in the decision cache, 0 if decisions are not cached
+	 */
+	public long getDecisionCacheHits() {
+		PrivilegeDecisionCache decisionCache = this.roleSetView.getDecisionCache();
+		return decisionCache == null ? 0L : decisionCache.getHits();
+	}
+
+	/**
+	 * @return the number of decisions which were not found in the decision cache, 0 if decisions are not cached
+	 */
+	public long getDecisionCacheMisses() {
+		PrivilegeDecisionCache decisionCache = this.roleSetView.getDecisionCache();
+		return decisionCache == null ? 0L : decisionCache.getMisses();
+	}
+
 	public Set<String> getPrivilegeNames() {
-		return this.privileges.keySet();
+		return this.roleSetView.getPrivileges().keySet();
 	}
 
 	public IPrivilege getPrivilege(String privilegeName) {
-		return this.privileges.get(privilegeName);
+		return this.roleSetView.getPrivileges().get(privilegeName);
 	}
 
 	public List<String> getFlatAllowList() {
 		List<String> allowList = new ArrayList<>();
-		for (IPrivilege privilege : this.privileges.values()) {
+		for (IPrivilege privilege : this.roleSetView.getPrivileges().values()) {
 			allowList.addAll(privilege.getAllowList());
 		}
 		return allowList;
@@ -103,25 +309,229 @@ public class PrivilegeContext {
 	 *             if there is an internal error due to wrongly configured privileges or programming errors
 	 */
 	public void validateAction(Restrictable restrictable) throws AccessDeniedException, PrivilegeException {
+		if (this.auditLog == null) {
+			doValidateAction(restrictable);
+			return;
+		}
+
+		// only string values are recorded, so that the writer does not access mutable objects of the caller
+		Object value = restrictable.getPrivilegeValue();
+		String privilegeValue = value instanceof String ? (String) value : null;
+		try {
+			doValidateAction(restrictable);
+		} catch (AccessDeniedException e) {
+			this.auditLog.record(AuditLog.Event.ACCESS_DENIED, this, restrictable.getPrivilegeName(), privilegeValue);
+			throw e;
+		}
+		this.auditLog.record(AuditLog.Event.ACCESS_GRANTED, this, restrictable.getPrivilegeName(), privilegeValue);
+	}
+
+	private void doValidateAction(Restrictable restrictable) {
 
 		// the privilege for the restrictable
-		String privilegeName = restrictable.getPrivilegeName();
-		IPrivilege privilege = this.privileges.get(privilegeName);
+		RoleSetView view = this.roleSetView;
+		int privilegeId = getPrivilegeId(restrictable);
+		IPrivilege privilege = view.getPrivilege(privilegeId);
 		if (privilege == null) {
-			String msg = MessageFormat.format(PrivilegeMessages.getString("Privilege.accessdenied.noprivilege"), //$NON-NLS-1$
-					getUsername(), privilegeName, restrictable.getClass().getName());
-			throw new AccessDeniedException(msg);
+			Object[] args = { getUsername(), restrictable.getPrivilegeName(), restrictable.getClass().getName() };
+			throw new AccessDeniedException("Privilege.accessdenied.noprivilege", args, false); //$NON-NLS-1$
+		}
+
+		// use a cached decision if possible, denials are not cached here, as the policy creates the exception
+		PrivilegePolicy policy = getPolicy(view, privilegeId, privilege);
+		String cacheKey = view.getCacheKey(privilegeId, restrictable);
+		if (cacheKey != null) {
+			assertSamePrivilegeName(privilege, restrictable);
+			if (view.getDecisionCache().get(privilegeId, cacheKey) == PrivilegeDecisionCache.ALLOWED)
+				return;
+		}
+
+		// delegate to the policy referenced by the restrictable
+		policy.validateAction(this, privilege, restrictable);
+		if (cacheKey != null)
+			view.getDecisionCache().put(privilegeId, cacheKey, true);
+	}
+
+	/**
+	 * Returns true if the user for this context has the {@link IPrivilege} with the given name, regardless of what the
+	 * {@link IPrivilege} allows
+	 * 
+	 * @param privilegeName
+	 *            the name of the {@link IPrivilege}
+	 * 
+	 * @return true if the user has the {@link IPrivilege}, false if not
+	 */
+	public boolean hasPrivilege(String privilegeName) {
+		return this.roleSetView.getPrivilege(PrivilegeIds.lookup(privilegeName)) != null;
+	}
+
+	/**
+	 * Checks if the user for this context has the privilege to access to the given {@link Restrictable}. In contrast to
+	 * {@link #validateAction(Restrictable)} a denial is returned instead of thrown, so that nothing is allocated when
+	 * access is denied
+	 * 
+	 * @param restrictable
+	 *            the {@link Restrictable} which the user wants to access
+	 * 
+	 * @return true if the user has access, false if not
+	 * 
+	 * @throws PrivilegeException
+	 *             if there is an internal error due to wrongly configured privileges or programming errors
+	 */
+	public boolean isAllowed(Restrictable restrictable) throws PrivilegeException {
+		return isAllowed(this.roleSetView, restrictable);
+	}
+
+	private boolean isAllowed(RoleSetView view, Restrictable restrictable) {
+
+		// the privilege for the restrictable
+		int privilegeId = getPrivilegeId(restrictable);
+		IPrivilege privilege = view.getPrivilege(privilegeId);
+		if (privilege == null)
+			return false;
+
+		return isAllowed(view, privilegeId, privilege, getPolicy(view, privilegeId, privilege), restrictable);
+	}
+
+	/**
+	 * Checks if the user for this context has the privilege to access each of the given {@link Restrictable}s. If they
+	 * all have the same privilege name, then the {@link IPrivilege} and its {@link PrivilegePolicy} are only looked up
+	 * once, and if the {@link PrivilegePolicy} is a {@link BatchPrivilegePolicy}, then it decides on all
+	 * {@link Restrictable}s in one call. Otherwise every {@link Restrictable} is checked on its own
+	 * 
+	 * @param restrictables
+	 *            the {@link Restrictable}s which the user wants to access
+	 * 
+	 * @return a {@link BitSet} in which the bit at the index of every allowed {@link Restrictable} is set, the index
+	 *         being the position in the iteration order of the given collection
+	 * 
+	 * @throws PrivilegeException
+	 *             if there is an internal error due to wrongly configured privileges or programming errors
+	 */
+	public BitSet isAllowed(Collection<? extends Restrictable> restrictables) throws PrivilegeException {
+		return isAllowed(asList(restrictables));
+	}
+
+	/**
+	 * Returns those of the given {@link Restrictable}s to which the user for this context has access, see
+	 * {@link #isAllowed(Collection)}
+	 * 
+	 * @param restrictables
+	 *            the {@link Restrictable}s which the user wants to access
+	 * 
+	 * @return a new list with the allowed {@link Restrictable}s in the iteration order of the given collection
+	 * 
+	 * @throws PrivilegeException
+	 *             if there is an internal error due to wrongly configured privileges or programming errors
+	 */
+	public <T extends Restrictable> List<T> filter(Collection<T> restrictables) throws PrivilegeException {
+		List<T> restrictableList = asList(restrictables);
+		BitSet allowed = isAllowed(restrictableList);
+
+		List<T> allowedList = new ArrayList<>(allowed.cardinality());
+		for (int i = allowed.nextSetBit(0); i >= 0; i = allowed.nextSetBit(i + 1)) {
+			allowedList.add(restrictableList.get(i));
+		}
+		return allowedList;
+	}
+
+	private BitSet isAllowed(List<? extends Restrictable> restrictables) {
+		int size = restrictables.size();
+		if (size == 0)
+			return new BitSet();
+
+		// restrictables with different privileges can not be decided together
+		RoleSetView view = this.roleSetView;
+		if (!haveSamePrivilegeName(restrictables)) {
+			BitSet allowed = new BitSet(size);
+			for (int i = 0; i < size; i++) {
+				if (isAllowed(view, restrictables.get(i)))
+					allowed.set(i);
+			}
+			return allowed;
+		}
+
+		// the privilege shared by all restrictables
+		int privilegeId = getPrivilegeId(restrictables.get(0));
+		IPrivilege privilege = view.getPrivilege(privilegeId);
+		if (privilege == null)
+			return new BitSet(size);
+
+		// delegate to the policy referenced by the restrictables
+		PrivilegePolicy policy = getPolicy(view, privilegeId, privilege);
+		if (policy instanceof BatchPrivilegePolicy)
+			return ((BatchPrivilegePolicy) policy).isAllowed(this, privilege, restrictables);
+
+		BitSet allowed = new BitSet(size);
+		for (int i = 0; i < size; i++) {
+			if (isAllowed(view, privilegeId, privilege, policy, restrictables.get(i)))
+				allowed.set(i);
+		}
+		return allowed;
+	}
+
+	private boolean isAllowed(RoleSetView view, int privilegeId, IPrivilege privilege, PrivilegePolicy policy,
+			Restrictable restrictable) {
+
+		// use a cached decision if possible
+		String cacheKey = view.getCacheKey(privilegeId, restrictable);
+		if (cacheKey != null) {
+			assertSamePrivilegeName(privilege, restrictable);
+			int decision = view.getDecisionCache().get(privilegeId, cacheKey);
+			if (decision != PrivilegeDecisionCache.UNKNOWN)
+				return decision == PrivilegeDecisionCache.ALLOWED;
 		}
 
-		// get the policy referenced by the restrictable
-		String policyName = privilege.getPolicy();
-		PrivilegePolicy policy = this.policies.get(policyName);
+		// delegate to the policy referenced by the restrictable
+		boolean allowed = policy.isAllowed(this, privilege, restrictable);
+		if (cacheKey != null)
+			view.getDecisionCache().put(privilegeId, cacheKey, allowed);
+		return allowed;
+	}
+
+	private PrivilegePolicy getPolicy(RoleSetView view, int privilegeId, IPrivilege privilege) {
+		PrivilegePolicy policy = view.getSharedPolicy(privilegeId);
+		if (policy == null)
+			policy = this.statefulPolicies.get(privilege.getPolicy());
 		if (policy == null) {
 			String msg = "The PrivilegePolicy {0} does not exist on the PrivilegeContext!"; //$NON-NLS-1$
-			throw new PrivilegeException(MessageFormat.format(msg, policyName));
+			throw new PrivilegeException(MessageFormat.format(msg, privilege.getPolicy()));
 		}
+		return policy;
+	}
 
-		// delegate to the policy
-		policy.validateAction(this, privilege, restrictable);
+	/**
+	 * Validates that the given {@link Restrictable} references the given {@link IPrivilege}, as the policy would do
+	 * before deciding, so that a cached decision is never returned for a {@link Restrictable} whose privilege id does
+	 * not match its privilege name
+	 */
+	private static void assertSamePrivilegeName(IPrivilege privilege, Restrictable restrictable) {
+		String privilegeName = privilege.getName();
+		String restrictablePrivilegeName = restrictable.getPrivilegeName();
+		if (!privilegeName.equals(restrictablePrivilegeName)) {
+			throw new PrivilegeException(PrivilegeMessages.format(
+					"Privilege.illegalArgument.privilegeNameMismatch", privilegeName, restrictablePrivilegeName)); //$NON-NLS-1$
+		}
+	}
+
+	private static boolean haveSamePrivilegeName(List<? extends Restrictable> restrictables) {
+		String privilegeName = restrictables.get(0).getPrivilegeName();
+		for (int i = 1; i < restrictables.size(); i++) {
+			if (!privilegeName.equals(restrictables.get(i).getPrivilegeName()))
+				return false;
+		}
+		return true;
+	}
+
+	private static <T> List<T> asList(Collection<T> collection) {
+		if (collection instanceof List && collection instanceof RandomAccess)
+			return (List<T>) collection;
+		return new ArrayList<>(collection);
+	}
+
+	private static int getPrivilegeId(Restrictable restrictable) {
+		if (restrictable instanceof IdentifiedRestrictable)
+			return ((IdentifiedRestrictable) restrictable).getPrivilegeId();
+		return PrivilegeIds.lookup(restrictable.getPrivilegeName());
 	}
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>
+ * A bounded cache of the decisions of a {@link RoleSetView} for pairs of privilege id and privilege value. The
+ * cache is direct mapped, i.e. every pair has exactly one slot and a new decision simply replaces the decision in its
+ * slot, so that neither reads nor writes need a lock. The entries are immutable and are published through an
+ * {@link AtomicReferenceArray}
+ * </p>
+ * 
+ * <p>
+ * As a {@link RoleSetView} is replaced whenever the roles change, and a {@link PrivilegeContext} is replaced whenever
+ * its user changes, the cache does not need to be invalidated
+ * </p>
+ * 
+ * <p>
+ * The hits and misses are counted in striped counters, so that threads using the same cache do not contend on a
+ * single counter
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+class PrivilegeDecisionCache {
+
+	static final int UNKNOWN = -1;
+	static final int DENIED = 0;
+	static final int ALLOWED = 1;
+
+	private final AtomicReferenceArray<Decision> slots;
+	private final int mask;
+	private final StripedCounter hits;
+	private final StripedCounter misses;
+
+	/**
+	 * @param size
+	 *            the number of decisions to cache, rounded up to the next power of two
+	 */
+	PrivilegeDecisionCache(int size) {
+		int capacity = 1;
+		while (capacity < size && capacity < (1 << 16)) {
+			capacity <<= 1;
+		}
+		this.slots = new AtomicReferenceArray<Decision>(capacity);
+		this.mask = capacity - 1;
+		this.hits = new StripedCounter();
+		this.misses = new StripedCounter();
+	}
+
+	/**
+	 * @return the number of decisions which were found in the cache
+	 */
+	long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * @return the number of decisions which were not found in the cache
+	 */
+	long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Returns the cached decision for the given privilege id and value
+	 * 
+	 * @return {@link #ALLOWED}, {@link #DENIED} or {@link #UNKNOWN} if the decision is not cached
+	 */
+	int get(int privilegeId, String privilegeValue) {
+		Decision decision = this.slots.get(slot(privilegeId, privilegeValue));
+		if (decision != null && decision.privilegeId == privilegeId && decision.privilegeValue.equals(privilegeValue)) {
+			this.hits.increment();
+			return decision.allowed ? ALLOWED : DENIED;
+		}
+
+		this.misses.increment();
+		return UNKNOWN;
+	}
+
+	/**
+	 * Caches the decision for the given privilege id and value, replacing the decision in its slot
+	 */
+	void put(int privilegeId, String privilegeValue, boolean allowed) {
+		this.slots.lazySet(slot(privilegeId, privilegeValue), new Decision(privilegeId, privilegeValue, allowed));
+	}
+
+	private int slot(int privilegeId, String privilegeValue) {
+		int hash = privilegeId * 31 + privilegeValue.hashCode();
+		hash ^= (hash >>> 16);
+		return hash & this.mask;
+	}
+
+	/**
+	 * A counter which is spread over a number of cells, one of which is chosen by the id of the incrementing thread.
+	 * The cells are padded so that they do not share a cache line
+	 */
+	private static class StripedCounter {
+
+		private static final int PADDING = 8;
+		private static final int MAX_STRIPES = 64;
+
+		private final AtomicLongArray cells;
+		private final int stripeMask;
+
+		private StripedCounter() {
+			int stripes = 1;
+			while (stripes < Runtime.getRuntime().availableProcessors() && stripes < MAX_STRIPES) {
+				stripes <<= 1;
+			}
+			this.cells = new AtomicLongArray(stripes * PADDING);
+			this.stripeMask = stripes - 1;
+		}
+
+		private void increment() {
+			int stripe = (int) Thread.currentThread().getId() & this.stripeMask;
+			this.cells.getAndIncrement(stripe * PADDING);
+		}
+
+		private long get() {
+			long sum = 0L;
+			for (int i = 0; i < this.cells.length(); i += PADDING) {
+				sum += this.cells.get(i);
+			}
+			return sum;
+		}
+	}
+
+	private static class Decision {
+		private final int privilegeId;
+		private final String privilegeValue;
+		private final boolean allowed;
+
+		private Decision(int privilegeId, String privilegeValue, boolean allowed) {
+			this.privilegeId = privilegeId;
+			this.privilegeValue = privilegeValue;
+			this.allowed = allowed;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Interns the names of the {@link IPrivilege}s to dense integer ids, so that the {@link PrivilegeContext} can find the
+ * {@link IPrivilege} for a {@link Restrictable} in an array instead of hashing the privilege name on every check. The
+ * ids are global to the JVM and are never reused, so that a {@link Restrictable} can resolve its id once and keep it,
+ * see {@link IdentifiedRestrictable}
+ * </p>
+ * 
+ * <p>
+ * Ids are only assigned by {@link #idOf(String)}, which is called for the privileges of the model when a
+ * {@link PrivilegeContext} is built. {@link #lookup(String)} never assigns an id, so that unknown privilege names do
+ * not grow the registry
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public final class PrivilegeIds {
+
+	private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+	private PrivilegeIds() {
+		// static helper
+	}
+
+	/**
+	 * Returns the id of the privilege with the given name, assigning a new id if the name has none yet
+	 * 
+	 * @param privilegeName
+	 *            the name of the privilege
+	 * 
+	 * @return the id of the privilege, which is never negative
+	 */
+	public static int idOf(String privilegeName) {
+		Integer id = ids.get(privilegeName);
+		if (id != null)
+			return id;
+
+		synchronized (ids) {
+			id = ids.get(privilegeName);
+			if (id == null) {
+				id = ids.size();
+				ids.put(privilegeName, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * Returns the id of the privilege with the given name, without assigning a new id
+	 * 
+	 * @param privilegeName
+	 *            the name of the privilege
+	 * 
+	 * @return the id of the privilege, or -1 if no id was assigned to the privilege name
+	 */
+	public static int lookup(String privilegeName) {
+		if (privilegeName == null)
+			return -1;
+		Integer id = ids.get(privilegeName);
+		return id == null ? -1 : id;
+	}
+}
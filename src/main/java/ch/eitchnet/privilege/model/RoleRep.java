@@ -17,6 +17,7 @@ package ch.eitchnet.privilege.model;
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.Set;
 
 import ch.eitchnet.privilege.base.PrivilegeException;
 import ch.eitchnet.privilege.model.internal.Role;
@@ -34,6 +35,7 @@ public class RoleRep implements Serializable {
 	private static final long serialVersionUID = 1L;
 
 	private String name;
+	private Set<String> parentRoleNames;
 	private Map<String, PrivilegeRep> privilegeMap;
 
 	/**
@@ -45,8 +47,24 @@ public class RoleRep implements Serializable {
 	 *            the map of privileges granted to this role
 	 */
 	public RoleRep(String name, Map<String, PrivilegeRep> privilegeMap) {
+		this(name, null, privilegeMap);
+	}
+
+	/**
+	 * Constructor for a role which extends other roles
+	 * 
+	 * @param name
+	 *            the name of this role
+	 * @param parentRoleNames
+	 *            the names of the roles from which this role inherits privileges, in the order of their precedence, may
+	 *            be null
+	 * @param privilegeMap
+	 *            the map of privileges granted to this role
+	 */
+	public RoleRep(String name, Set<String> parentRoleNames, Map<String, PrivilegeRep> privilegeMap) {
 
 		this.name = name;
+		this.parentRoleNames = parentRoleNames;
 		this.privilegeMap = privilegeMap;
 
 		validate();
@@ -75,6 +93,21 @@ public class RoleRep implements Serializable {
 		this.name = name;
 	}
 
+	/**
+	 * @return the names of the roles which this role extends, may be null
+	 */
+	public Set<String> getParentRoleNames() {
+		return this.parentRoleNames;
+	}
+
+	/**
+	 * @param parentRoleNames
+	 *            the names of the roles which this role extends
+	 */
+	public void setParentRoleNames(Set<String> parentRoleNames) {
+		this.parentRoleNames = parentRoleNames;
+	}
+
 	/**
 	 * @return the privilegeMap
 	 */
@@ -93,6 +126,8 @@ public class RoleRep implements Serializable {
 		StringBuilder builder = new StringBuilder();
 		builder.append("RoleRep [name=");
 		builder.append(this.name);
+		builder.append(", parentRoleNames=");
+		builder.append((this.parentRoleNames == null ? "null" : this.parentRoleNames));
 		builder.append(", privilegeMap=");
 		builder.append((this.privilegeMap == null ? "null" : this.privilegeMap));
 		builder.append("]");
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import ch.eitchnet.privilege.policy.DeterministicPolicy;
+import ch.eitchnet.privilege.policy.PrivilegePolicy;
+import ch.eitchnet.privilege.policy.StatefulPolicy;
+
+/**
+ * <p>
+ * The {@link RoleSetView} is the immutable view on the effective privileges of a set of roles, together with their
+ * {@link PrivilegePolicy}s. The privileges and policies are kept in arrays indexed by the id of the privilege name, see
+ * {@link PrivilegeIds}, so that validating an action does not need to hash the privilege name
+ * </p>
+ * 
+ * <p>
+ * As the privileges of a user only depend on the user's roles, a {@link RoleSetView} is shared by all
+ * {@link PrivilegeContext}s of users with the same set of roles. This includes the optional
+ * {@link PrivilegeDecisionCache}, as the decisions of {@link DeterministicPolicy}s do not depend on the user. When the
+ * roles change, a new {@link RoleSetView} is created and the affected {@link PrivilegeContext}s are refreshed with it
+ * </p>
+ * 
+ * <p>
+ * Only shared {@link PrivilegePolicy}s are kept. Of {@link StatefulPolicy}s only the names are kept, as every
+ * {@link PrivilegeContext} needs its own instances of them
+ * </p>
+ * 
+ * <p>
+ * Note: This is an internal object which is not to be serialized to clients
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public final class RoleSetView {
+
+	private final Map<String, IPrivilege> privileges;
+	private final IPrivilege[] privilegeTable;
+	private final PrivilegePolicy[] policyTable;
+	private final boolean[] cacheableTable;
+	private final Set<String> statefulPolicyNames;
+	private final PrivilegeDecisionCache decisionCache;
+
+	/**
+	 * Default constructor
+	 * 
+	 * @param privileges
+	 *            the effective {@link IPrivilege}s of the roles by their name
+	 * @param policies
+	 *            the {@link PrivilegePolicy}s of the {@link IPrivilege}s by their name, instances of
+	 *            {@link StatefulPolicy}s are not kept
+	 * @param decisionCacheSize
+	 *            the number of decisions to cache, 0 for no caching
+	 */
+	public RoleSetView(Map<String, IPrivilege> privileges, Map<String, PrivilegePolicy> policies,
+			int decisionCacheSize) {
+		this.privileges = Collections.unmodifiableMap(new HashMap<String, IPrivilege>(privileges));
+
+		int size = 0;
+		for (String privilegeName : this.privileges.keySet()) {
+			size = Math.max(size, PrivilegeIds.idOf(privilegeName) + 1);
+		}
+		this.privilegeTable = new IPrivilege[size];
+		this.policyTable = new PrivilegePolicy[size];
+		this.cacheableTable = new boolean[size];
+		Set<String> statefulPolicyNames = new HashSet<String>();
+		for (Map.Entry<String, IPrivilege> entry : this.privileges.entrySet()) {
+			int privilegeId = PrivilegeIds.idOf(entry.getKey());
+			IPrivilege privilege = entry.getValue();
+			this.privilegeTable[privilegeId] = privilege;
+			PrivilegePolicy policy = policies.get(privilege.getPolicy());
+			if (policy instanceof StatefulPolicy)
+				statefulPolicyNames.add(privilege.getPolicy());
+			else
+				this.policyTable[privilegeId] = policy;
+			this.cacheableTable[privilegeId] = isDeterministic(policy);
+		}
+		this.statefulPolicyNames = Collections.unmodifiableSet(statefulPolicyNames);
+
+		this.decisionCache = decisionCacheSize > 0 ? new PrivilegeDecisionCache(decisionCacheSize) : null;
+	}
+
+	/**
+	 * @return the unmodifiable map of the effective {@link IPrivilege}s by their name
+	 */
+	public Map<String, IPrivilege> getPrivileges() {
+		return this.privileges;
+	}
+
+	/**
+	 * @return the unmodifiable set of the names of the {@link StatefulPolicy}s of which every {@link PrivilegeContext}
+	 *         needs its own instance
+	 */
+	public Set<String> getStatefulPolicyNames() {
+		return this.statefulPolicyNames;
+	}
+
+	/**
+	 * @return the {@link PrivilegeDecisionCache}, or null if decisions are not cached
+	 */
+	PrivilegeDecisionCache getDecisionCache() {
+		return this.decisionCache;
+	}
+
+	/**
+	 * Returns the privilege value of the given {@link Restrictable} by which the decision of the policy of the
+	 * privilege with the given id can be cached
+	 * 
+	 * @return the privilege value, or null if the decision may not be cached
+	 */
+	String getCacheKey(int privilegeId, Restrictable restrictable) {
+		if (this.decisionCache == null || !this.cacheableTable[privilegeId])
+			return null;
+		Object privilegeValue = restrictable.getPrivilegeValue();
+		return privilegeValue instanceof String ? (String) privilegeValue : null;
+	}
+
+	/**
+	 * Returns true if the class of the given policy itself declares to be a {@link DeterministicPolicy}. The marker is
+	 * not inherited, so that a subclass overriding the decision is not cached without opting in
+	 */
+	private static boolean isDeterministic(PrivilegePolicy policy) {
+		if (policy == null || policy instanceof StatefulPolicy)
+			return false;
+		for (Class<?> policyInterface : policy.getClass().getInterfaces()) {
+			if (DeterministicPolicy.class.isAssignableFrom(policyInterface))
+				return true;
+		}
+		return false;
+	}
+
+	IPrivilege getPrivilege(int privilegeId) {
+		if (privilegeId < 0 || privilegeId >= this.privilegeTable.length)
+			return null;
+		return this.privilegeTable[privilegeId];
+	}
+
+	/**
+	 * @return the shared {@link PrivilegePolicy} of the privilege with the given id, or null if the policy does not
+	 *         exist or is a {@link StatefulPolicy}
+	 */
+	PrivilegePolicy getSharedPolicy(int privilegeId) {
+		return this.policyTable[privilegeId];
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.model;
+
+import java.io.Serializable;
+import java.text.MessageFormat;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.eitchnet.privilege.base.PrivilegeException;
+
+/**
+ * <p>
+ * The {@link SessionDataMap} is the {@link java.util.Map} in which the data of a session is stored, see
+ * {@link Certificate#getSessionDataMap()}. It may be used by multiple threads concurrently, and its size is bounded by
+ * a maximum number of bytes, so that a misbehaving client can not use up the memory
+ * </p>
+ * 
+ * <p>
+ * The size of an entry is estimated as two bytes per character of the key and the value plus a fixed overhead. If
+ * putting an entry would exceed the maximum size, then a {@link PrivilegeException} is thrown and the map is not
+ * changed. Null keys and values are not allowed
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class SessionDataMap extends AbstractMap<String, String> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * the default maximum size in bytes of the session data of a session
+	 */
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024L;
+
+	/**
+	 * the estimated number of bytes used by an entry in addition to its key and value
+	 */
+	private static final long ENTRY_OVERHEAD = 64L;
+
+	private final ConcurrentHashMap<String, String> data;
+	private final AtomicLong byteSize;
+	private volatile long maxBytes;
+
+	/**
+	 * Default constructor with a maximum size of {@link #DEFAULT_MAX_BYTES}
+	 */
+	public SessionDataMap() {
+		this(DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Constructs a {@link SessionDataMap} with the given maximum size
+	 * 
+	 * @param maxBytes
+	 *            the maximum size in bytes of the session data
+	 */
+	public SessionDataMap(long maxBytes) {
+		this.data = new ConcurrentHashMap<String, String>(8, 0.75f, 2);
+		this.byteSize = new AtomicLong();
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return the estimated size in bytes of the session data
+	 */
+	public long getByteSize() {
+		return this.byteSize.get();
+	}
+
+	/**
+	 * @return the maximum size in bytes of the session data
+	 */
+	public long getMaxBytes() {
+		return this.maxBytes;
+	}
+
+	/**
+	 * Sets the maximum size in bytes of the session data. Existing data is kept, even if it exceeds the new maximum
+	 * 
+	 * @param maxBytes
+	 *            the maximum size in bytes of the session data
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public int size() {
+		return this.data.size();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key != null && this.data.containsKey(key);
+	}
+
+	@Override
+	public String get(Object key) {
+		return key == null ? null : this.data.get(key);
+	}
+
+	@Override
+	public String put(String key, String value) {
+		if (key == null || value == null)
+			throw new PrivilegeException("Session data may not contain null keys or values!"); //$NON-NLS-1$
+
+		// only the difference to the replaced value is reserved, so that replacing a value near the limit is possible
+		String expectedValue = this.data.get(key);
+		long expectedBytes = expectedValue == null ? 0L : sizeOf(key, expectedValue);
+		long bytes = sizeOf(key, value) - expectedBytes;
+		reserve(key, bytes);
+
+		String oldValue;
+		try {
+			oldValue = this.data.put(key, value);
+		} catch (RuntimeException e) {
+			this.byteSize.addAndGet(-bytes);
+			throw e;
+		}
+
+		// the value might have been changed concurrently
+		long oldBytes = oldValue == null ? 0L : sizeOf(key, oldValue);
+		if (oldBytes != expectedBytes)
+			this.byteSize.addAndGet(expectedBytes - oldBytes);
+		return oldValue;
+	}
+
+	@Override
+	public String remove(Object key) {
+		if (key == null)
+			return null;
+		String oldValue = this.data.remove(key);
+		if (oldValue != null)
+			this.byteSize.addAndGet(-sizeOf((String) key, oldValue));
+		return oldValue;
+	}
+
+	@Override
+	public void clear() {
+		for (String key : this.data.keySet()) {
+			remove(key);
+		}
+	}
+
+	@Override
+	public Set<Entry<String, String>> entrySet() {
+		return new AbstractSet<Entry<String, String>>() {
+
+			@Override
+			public int size() {
+				return SessionDataMap.this.data.size();
+			}
+
+			@Override
+			public Iterator<Entry<String, String>> iterator() {
+				final Iterator<Entry<String, String>> iter = SessionDataMap.this.data.entrySet().iterator();
+				return new Iterator<Entry<String, String>>() {
+
+					private Entry<String, String> current;
+
+					@Override
+					public boolean hasNext() {
+						return iter.hasNext();
+					}
+
+					@Override
+					public Entry<String, String> next() {
+						Entry<String, String> entry = iter.next();
+						this.current = new SimpleImmutableEntry<String, String>(entry);
+						return this.current;
+					}
+
+					@Override
+					public void remove() {
+						if (this.current == null)
+							throw new IllegalStateException();
+						String key = this.current.getKey();
+						String value = this.current.getValue();
+						this.current = null;
+
+						// only remove the entry if it was not changed concurrently
+						if (SessionDataMap.this.data.remove(key, value))
+							SessionDataMap.this.byteSize.addAndGet(-sizeOf(key, value));
+					}
+				};
+			}
+		};
+	}
+
+	private void reserve(String key, long bytes) {
+		long size;
+		do {
+			size = this.byteSize.get();
+			if (bytes > 0L && size + bytes > this.maxBytes) {
+				String msg = "The session data can not store {0} as the maximum of {1} bytes would be exceeded"; //$NON-NLS-1$
+				throw new PrivilegeException(MessageFormat.format(msg, key, Long.toString(this.maxBytes)));
+			}
+		} while (!this.byteSize.compareAndSet(size, size + bytes));
+	}
+
+	private static long sizeOf(String key, String value) {
+		return ENTRY_OVERHEAD + 2L * (key.length() + value.length());
+	}
+}
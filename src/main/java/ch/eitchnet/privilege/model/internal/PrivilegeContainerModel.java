@@ -15,6 +15,7 @@
  */
 package ch.eitchnet.privilege.model.internal;
 
+import java.lang.reflect.Modifier;
 import java.text.MessageFormat;
 import java.util.HashMap;
 import java.util.Map;
@@ -39,6 +40,8 @@ public class PrivilegeContainerModel {
 	private Map<String, String> encryptionHandlerParameterMap;
 	private String persistenceHandlerClassName;
 	private Map<String, String> persistenceHandlerParameterMap;
+	private String sessionStoreClassName;
+	private Map<String, String> sessionStoreParameterMap;
 	private Map<String, String> parameterMap;
 	private Map<String, Class<PrivilegePolicy>> policies;
 
@@ -124,6 +127,36 @@ public class PrivilegeContainerModel {
 		this.persistenceHandlerParameterMap = persistenceHandlerParameterMap;
 	}
 
+	/**
+	 * @return the sessionStoreClassName, or null if no session store is configured
+	 */
+	public String getSessionStoreClassName() {
+		return this.sessionStoreClassName;
+	}
+
+	/**
+	 * @param sessionStoreClassName
+	 *            the sessionStoreClassName to set
+	 */
+	public void setSessionStoreClassName(String sessionStoreClassName) {
+		this.sessionStoreClassName = sessionStoreClassName;
+	}
+
+	/**
+	 * @return the sessionStoreParameterMap
+	 */
+	public Map<String, String> getSessionStoreParameterMap() {
+		return this.sessionStoreParameterMap;
+	}
+
+	/**
+	 * @param sessionStoreParameterMap
+	 *            the sessionStoreParameterMap to set
+	 */
+	public void setSessionStoreParameterMap(Map<String, String> sessionStoreParameterMap) {
+		this.sessionStoreParameterMap = sessionStoreParameterMap;
+	}
+
 	/**
 	 * @param privilegeName
 	 * @param policyClassName
@@ -132,18 +165,24 @@ public class PrivilegeContainerModel {
 
 		try {
 
-			// load class and try to create a new instance
-			@SuppressWarnings("unchecked")
-			Class<PrivilegePolicy> clazz = (Class<PrivilegePolicy>) Class.forName(policyClassName);
-			clazz.newInstance();
+			// load class and check that it can be instantiated, the instances are created by the PrivilegeHandler
+			Class<?> clazz = Class.forName(policyClassName);
+			if (!PrivilegePolicy.class.isAssignableFrom(clazz) || Modifier.isAbstract(clazz.getModifiers())) {
+				String msg = "Configured Privilege Policy {0} with class {1} could not be instantiated."; //$NON-NLS-1$
+				msg = MessageFormat.format(msg, privilegeName, policyClassName);
+				throw new PrivilegeException(msg);
+			}
+			clazz.getConstructor();
 
-			this.policies.put(privilegeName, clazz);
+			@SuppressWarnings("unchecked")
+			Class<PrivilegePolicy> policyClazz = (Class<PrivilegePolicy>) clazz;
+			this.policies.put(privilegeName, policyClazz);
 
-		} catch (InstantiationException e) {
+		} catch (NoSuchMethodException e) {
 			String msg = "Configured Privilege Policy {0} with class {1} could not be instantiated."; //$NON-NLS-1$
 			msg = MessageFormat.format(msg, privilegeName, policyClassName);
 			throw new PrivilegeException(msg, e);
-		} catch (IllegalAccessException e) {
+		} catch (SecurityException e) {
 			String msg = "Configured Privilege Policy {0} with class {1} can not be accessed."; //$NON-NLS-1$
 			msg = MessageFormat.format(msg, privilegeName, policyClassName);
 			throw new PrivilegeException(msg, e);
@@ -178,6 +217,8 @@ public class PrivilegeContainerModel {
 		builder.append(this.persistenceHandlerClassName);
 		builder.append(", persistenceHandlerParameterMap=");
 		builder.append(this.persistenceHandlerParameterMap.size());
+		builder.append(", sessionStoreClassName=");
+		builder.append(this.sessionStoreClassName);
 		builder.append(", parameterMap=");
 		builder.append(this.parameterMap.size());
 		builder.append(", policies=");
@@ -54,6 +54,7 @@ public final class PrivilegeImpl implements IPrivilege {
 	private final boolean allAllowed;
 	private final Set<String> denyList;
 	private final Set<String> allowList;
+	private volatile Object compiledRules;
 
 	/**
 	 * Default constructor
@@ -89,8 +90,9 @@ public final class PrivilegeImpl implements IPrivilege {
 		this.name = name;
 		this.allAllowed = allAllowed;
 		this.policy = policy;
-		this.denyList = Collections.unmodifiableSet(denyList);
-		this.allowList = Collections.unmodifiableSet(allowList);
+		// copy the lists, as the compiled rules must not get out of sync with them
+		this.denyList = Collections.unmodifiableSet(new HashSet<String>(denyList));
+		this.allowList = Collections.unmodifiableSet(new HashSet<String>(allowList));
 	}
 
 	/**
@@ -101,7 +103,7 @@ public final class PrivilegeImpl implements IPrivilege {
 	 */
 	public PrivilegeImpl(PrivilegeRep privilegeRep) {
 		this(privilegeRep.getName(), privilegeRep.getPolicy(), privilegeRep.isAllAllowed(), privilegeRep.getDenyList(),
-				privilegeRep.getDenyList());
+				privilegeRep.getAllowList());
 	}
 
 	/**
@@ -174,7 +176,7 @@ public final class PrivilegeImpl implements IPrivilege {
 	 */
 	@Override
 	public boolean hasDenied() {
-		return !this.allowList.isEmpty();
+		return !this.denyList.isEmpty();
 	}
 
 	/**
@@ -185,6 +187,24 @@ public final class PrivilegeImpl implements IPrivilege {
 		return this.denyList.contains(value);
 	}
 
+	/**
+	 * @return the allow and deny lists as compiled by a {@link ch.eitchnet.privilege.policy.CompilingPolicy}, or null
+	 *         if they were not compiled
+	 */
+	@Override
+	public Object getCompiledRules() {
+		return this.compiledRules;
+	}
+
+	/**
+	 * @param compiledRules
+	 *            the allow and deny lists as compiled by a {@link ch.eitchnet.privilege.policy.CompilingPolicy}
+	 */
+	@Override
+	public void setCompiledRules(Object compiledRules) {
+		this.compiledRules = compiledRules;
+	}
+
 	/**
 	 * Returns a string representation of this object displaying its concrete type and its values
 	 * 
@@ -15,8 +15,10 @@
  */
 package ch.eitchnet.privilege.model.internal;
 
+import java.text.MessageFormat;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -33,6 +35,12 @@ import ch.eitchnet.utils.helper.StringHelper;
  * </p>
  * 
  * <p>
+ * A {@link Role} may extend other roles, in which case it inherits their privileges. Privileges defined on the role
+ * itself take precedence over inherited privileges with the same name, and between the parent roles the first declared
+ * parent takes precedence. The inherited privileges are resolved by the {@link RoleHierarchy}
+ * </p>
+ * 
+ * <p>
  * Note: This is an internal object which is not to be serialized or passed to clients, {@link RoleRep}s are used for
  * that
  * </p>
@@ -42,6 +50,7 @@ import ch.eitchnet.utils.helper.StringHelper;
 public final class Role {
 
 	private final String name;
+	private final Set<String> parentRoleNames;
 	private final Map<String, IPrivilege> privilegeMap;
 
 	/**
@@ -53,6 +62,21 @@ public final class Role {
 	 *            a map of {@link IPrivilege}s granted to this role
 	 */
 	public Role(String name, Map<String, IPrivilege> privilegeMap) {
+		this(name, null, privilegeMap);
+	}
+
+	/**
+	 * Constructor for a role which extends other roles
+	 * 
+	 * @param name
+	 *            the name of the role
+	 * @param parentRoleNames
+	 *            the names of the roles from which this role inherits privileges, in the order of their precedence, may
+	 *            be null
+	 * @param privilegeMap
+	 *            a map of {@link IPrivilege}s granted to this role
+	 */
+	public Role(String name, Set<String> parentRoleNames, Map<String, IPrivilege> privilegeMap) {
 
 		if (StringHelper.isEmpty(name)) {
 			throw new PrivilegeException("No name defined!"); //$NON-NLS-1$
@@ -62,6 +86,7 @@ public final class Role {
 		}
 
 		this.name = name;
+		this.parentRoleNames = copyParentRoleNames(name, parentRoleNames);
 		this.privilegeMap = Collections.unmodifiableMap(privilegeMap);
 	}
 
@@ -89,9 +114,24 @@ public final class Role {
 		}
 
 		this.name = name;
+		this.parentRoleNames = copyParentRoleNames(name, roleRep.getParentRoleNames());
 		this.privilegeMap = Collections.unmodifiableMap(privilegeMap);
 	}
 
+	private static Set<String> copyParentRoleNames(String name, Set<String> parentRoleNames) {
+		if (parentRoleNames == null || parentRoleNames.isEmpty())
+			return Collections.emptySet();
+
+		for (String parentRoleName : parentRoleNames) {
+			if (StringHelper.isEmpty(parentRoleName)) {
+				String msg = "Role {0} extends a role with an empty name!"; //$NON-NLS-1$
+				throw new PrivilegeException(MessageFormat.format(msg, name));
+			}
+		}
+
+		return Collections.unmodifiableSet(new LinkedHashSet<String>(parentRoleNames));
+	}
+
 	/**
 	 * @return the name
 	 */
@@ -99,6 +139,22 @@ public final class Role {
 		return this.name;
 	}
 
+	/**
+	 * Returns the names of the roles which this role extends, in the order of their precedence
+	 * 
+	 * @return the names of the roles which this role extends, which is empty if this role does not extend any roles
+	 */
+	public Set<String> getParentRoleNames() {
+		return this.parentRoleNames;
+	}
+
+	/**
+	 * @return the unmodifiable map of the {@link IPrivilege}s defined on this role itself
+	 */
+	Map<String, IPrivilege> getPrivilegeMap() {
+		return this.privilegeMap;
+	}
+
 	/**
 	 * Returns the {@link Set} of names for the currently stored {@link IPrivilege Privileges}
 	 * 
@@ -137,7 +193,7 @@ public final class Role {
 		for (String privilegeName : this.privilegeMap.keySet()) {
 			privilegeMap.put(privilegeName, this.privilegeMap.get(privilegeName).asPrivilegeRep());
 		}
-		return new RoleRep(this.name, privilegeMap);
+		return new RoleRep(this.name, new LinkedHashSet<String>(this.parentRoleNames), privilegeMap);
 	}
 
 	/**
@@ -151,6 +207,10 @@ public final class Role {
 		StringBuilder builder = new StringBuilder();
 		builder.append("Role [name=");
 		builder.append(this.name);
+		if (!this.parentRoleNames.isEmpty()) {
+			builder.append(", extends=");
+			builder.append(this.parentRoleNames);
+		}
 		builder.append(", privileges=");
 		builder.append(this.privilegeMap.keySet());
 		builder.append("]");
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.model.internal;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.model.IPrivilege;
+import ch.eitchnet.privilege.model.RoleSetView;
+
+/**
+ * <p>
+ * The {@link RoleHierarchy} holds the effective privileges of every {@link Role}, i.e. the privileges defined on the
+ * role itself and all privileges inherited from the roles it extends, directly or transitively
+ * </p>
+ * 
+ * <p>
+ * The effective privileges are resolved once when the hierarchy is created, so that a lookup is a single map access.
+ * Creating the hierarchy fails if a role extends a role which does not exist, or if a role extends itself through its
+ * parents. A {@link RoleHierarchy} is immutable, thus when the roles change a new hierarchy is created and replaces the
+ * old one. Roles which do not extend other roles share their own privilege map and do not need any additional memory
+ * </p>
+ * 
+ * <p>
+ * Additionally the hierarchy caches the {@link RoleSetView}s of the distinct sets of roles of the users, so that all
+ * users with the same roles share one {@link RoleSetView}. When a new hierarchy replaces this one, only the
+ * {@link RoleSetView}s which are not affected by the change are taken over
+ * </p>
+ * 
+ * <p>
+ * Note: This is an internal object which is not to be passed to clients
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public final class RoleHierarchy {
+
+	private final Map<String, Role> roles;
+	private final Map<String, Map<String, IPrivilege>> effectivePrivileges;
+	private final ConcurrentHashMap<List<String>, RoleSetView> roleSetViews;
+
+	/**
+	 * Creates the hierarchy of the given roles
+	 * 
+	 * @param roles
+	 *            all roles of the model
+	 * 
+	 * @throws PrivilegeException
+	 *             if a role extends a role which does not exist, or if the roles extend each other in a cycle
+	 */
+	public RoleHierarchy(Collection<Role> roles) throws PrivilegeException {
+
+		this.roles = new HashMap<String, Role>(roles.size());
+		for (Role role : roles) {
+			this.roles.put(role.getName(), role);
+		}
+
+		this.roleSetViews = new ConcurrentHashMap<List<String>, RoleSetView>();
+		this.effectivePrivileges = new HashMap<String, Map<String, IPrivilege>>(roles.size());
+		List<String> path = new ArrayList<String>();
+		for (Role role : roles) {
+			resolve(role, path);
+		}
+	}
+
+	/**
+	 * Returns a new {@link RoleHierarchy} in which the given role is added, or replaces the role with the same name
+	 * 
+	 * @param role
+	 *            the role to add or replace
+	 * 
+	 * @return the new {@link RoleHierarchy}
+	 * 
+	 * @throws PrivilegeException
+	 *             if the new role extends a role which does not exist, or leads to a cycle
+	 */
+	public RoleHierarchy withRole(Role role) throws PrivilegeException {
+		Map<String, Role> newRoles = new HashMap<String, Role>(this.roles);
+		newRoles.put(role.getName(), role);
+		RoleHierarchy roleHierarchy = new RoleHierarchy(newRoles.values());
+		roleHierarchy.takeOverRoleSetViews(this, roleHierarchy.getDependentRoleNames(role.getName()));
+		return roleHierarchy;
+	}
+
+	/**
+	 * Returns a new {@link RoleHierarchy} without the role with the given name
+	 * 
+	 * @param roleName
+	 *            the name of the role to remove
+	 * 
+	 * @return the new {@link RoleHierarchy}
+	 * 
+	 * @throws PrivilegeException
+	 *             if another role still extends the role to remove
+	 */
+	public RoleHierarchy withoutRole(String roleName) throws PrivilegeException {
+		Map<String, Role> newRoles = new HashMap<String, Role>(this.roles);
+		newRoles.remove(roleName);
+		RoleHierarchy roleHierarchy = new RoleHierarchy(newRoles.values());
+		roleHierarchy.takeOverRoleSetViews(this, Collections.singleton(roleName));
+		return roleHierarchy;
+	}
+
+	/**
+	 * Returns the key by which the {@link RoleSetView} of the given set of roles is cached, i.e. the sorted role names
+	 * 
+	 * @param roleNames
+	 *            the names of the roles of a user
+	 * 
+	 * @return the key of the set of roles
+	 */
+	public static List<String> getRoleSetKey(Set<String> roleNames) {
+		String[] roleSetKey = roleNames.toArray(new String[roleNames.size()]);
+		Arrays.sort(roleSetKey);
+		return Arrays.asList(roleSetKey);
+	}
+
+	/**
+	 * Returns the cached {@link RoleSetView} of the set of roles with the given key
+	 * 
+	 * @param roleSetKey
+	 *            the key of the set of roles as returned by {@link #getRoleSetKey(Set)}
+	 * 
+	 * @return the {@link RoleSetView}, or null if it is not cached
+	 */
+	public RoleSetView getRoleSetView(List<String> roleSetKey) {
+		return this.roleSetViews.get(roleSetKey);
+	}
+
+	/**
+	 * Caches the given {@link RoleSetView} of the set of roles with the given key, unless another thread cached one
+	 * concurrently
+	 * 
+	 * @param roleSetKey
+	 *            the key of the set of roles as returned by {@link #getRoleSetKey(Set)}
+	 * @param roleSetView
+	 *            the {@link RoleSetView} to cache
+	 * 
+	 * @return the cached {@link RoleSetView}, which is to be used instead of the given one
+	 */
+	public RoleSetView addRoleSetView(List<String> roleSetKey, RoleSetView roleSetView) {
+		RoleSetView existingRoleSetView = this.roleSetViews.putIfAbsent(roleSetKey, roleSetView);
+		return existingRoleSetView == null ? roleSetView : existingRoleSetView;
+	}
+
+	private void takeOverRoleSetViews(RoleHierarchy previous, Set<String> changedRoleNames) {
+		for (Map.Entry<List<String>, RoleSetView> entry : previous.roleSetViews.entrySet()) {
+			if (Collections.disjoint(entry.getKey(), changedRoleNames))
+				this.roleSetViews.put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Returns the effective privileges of the role with the given name, i.e. the privileges of the role itself and the
+	 * privileges it inherits
+	 * 
+	 * @param roleName
+	 *            the name of the role
+	 * 
+	 * @return the unmodifiable map of the effective {@link IPrivilege}s by their name, or null if the role does not
+	 *         exist
+	 */
+	public Map<String, IPrivilege> getPrivileges(String roleName) {
+		return this.effectivePrivileges.get(roleName);
+	}
+
+	/**
+	 * Determines if the role with the given name has the {@link IPrivilege} with the given name, either by itself or
+	 * by inheritance
+	 * 
+	 * @param roleName
+	 *            the name of the role
+	 * @param privilegeName
+	 *            the name of the {@link IPrivilege}
+	 * 
+	 * @return true if the role exists and has the privilege
+	 */
+	public boolean hasPrivilege(String roleName, String privilegeName) {
+		Map<String, IPrivilege> privileges = this.effectivePrivileges.get(roleName);
+		return privileges != null && privileges.containsKey(privilegeName);
+	}
+
+	/**
+	 * Returns the names of the roles whose effective privileges depend on the role with the given name, i.e. the role
+	 * itself and all roles which extend it directly or transitively
+	 * 
+	 * @param roleName
+	 *            the name of the role
+	 * 
+	 * @return the names of the dependent roles, including the given role name
+	 */
+	public Set<String> getDependentRoleNames(String roleName) {
+		Set<String> dependentRoleNames = new HashSet<String>();
+		dependentRoleNames.add(roleName);
+		for (Role role : this.roles.values()) {
+			if (extendsRole(role, roleName))
+				dependentRoleNames.add(role.getName());
+		}
+		return dependentRoleNames;
+	}
+
+	private boolean extendsRole(Role role, String roleName) {
+		for (String parentRoleName : role.getParentRoleNames()) {
+			if (parentRoleName.equals(roleName))
+				return true;
+			Role parentRole = this.roles.get(parentRoleName);
+			if (parentRole != null && extendsRole(parentRole, roleName))
+				return true;
+		}
+		return false;
+	}
+
+	private Map<String, IPrivilege> resolve(Role role, List<String> path) {
+
+		Map<String, IPrivilege> privileges = this.effectivePrivileges.get(role.getName());
+		if (privileges != null)
+			return privileges;
+
+		if (path.contains(role.getName())) {
+			String msg = "Role {0} extends itself through {1}"; //$NON-NLS-1$
+			throw new PrivilegeException(MessageFormat.format(msg, role.getName(), path));
+		}
+
+		// roles without parents need no copy of their privileges
+		Map<String, IPrivilege> ownPrivileges = role.getPrivilegeMap();
+		if (role.getParentRoleNames().isEmpty()) {
+			this.effectivePrivileges.put(role.getName(), ownPrivileges);
+			return ownPrivileges;
+		}
+
+		path.add(role.getName());
+
+		// the own privileges take precedence, then the first declared parent
+		privileges = new HashMap<String, IPrivilege>(ownPrivileges);
+		for (String parentRoleName : role.getParentRoleNames()) {
+			Role parentRole = this.roles.get(parentRoleName);
+			if (parentRole == null) {
+				String msg = "Role {0} extends role {1} which does not exist!"; //$NON-NLS-1$
+				throw new PrivilegeException(MessageFormat.format(msg, role.getName(), parentRoleName));
+			}
+
+			for (Map.Entry<String, IPrivilege> entry : resolve(parentRole, path).entrySet()) {
+				if (!privileges.containsKey(entry.getKey()))
+					privileges.put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		path.remove(path.size() - 1);
+
+		privileges = Collections.unmodifiableMap(privileges);
+		this.effectivePrivileges.put(role.getName(), privileges);
+		return privileges;
+	}
+}
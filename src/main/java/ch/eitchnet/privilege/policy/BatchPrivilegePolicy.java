@@ -0,0 +1,60 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.policy;
+
+import java.util.BitSet;
+import java.util.List;
+
+import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.model.IPrivilege;
+import ch.eitchnet.privilege.model.PrivilegeContext;
+import ch.eitchnet.privilege.model.Restrictable;
+
+/**
+ * <p>
+ * A {@link PrivilegePolicy} which can decide on many {@link Restrictable}s sharing the same privilege name in one
+ * call, so that the validation of the arguments and any lookups on the {@link IPrivilege} are only done once per batch
+ * instead of once per {@link Restrictable}
+ * </p>
+ * 
+ * <p>
+ * The result must be the same as calling
+ * {@link PrivilegePolicy#isAllowed(PrivilegeContext, IPrivilege, Restrictable)} for every {@link Restrictable}
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public interface BatchPrivilegePolicy extends PrivilegePolicy {
+
+	/**
+	 * Checks if the given {@link IPrivilege} has access to each of the given {@link Restrictable}s
+	 * 
+	 * @param context
+	 *            the privilege context
+	 * @param privilege
+	 *            the {@link IPrivilege} containing the permissions
+	 * @param restrictables
+	 *            the {@link Restrictable}s to which the user wants access, which all have the privilege name of the
+	 *            given {@link IPrivilege}
+	 * 
+	 * @return a {@link BitSet} in which the bit at the index of every allowed {@link Restrictable} is set
+	 * 
+	 * @throws PrivilegeException
+	 *             if there is an internal error due to wrongly configured privileges or programming errors
+	 */
+	public abstract BitSet isAllowed(PrivilegeContext context, IPrivilege privilege,
+			List<? extends Restrictable> restrictables) throws PrivilegeException;
+}
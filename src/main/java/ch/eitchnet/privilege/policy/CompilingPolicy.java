@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.policy;
+
+import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.model.IPrivilege;
+
+/**
+ * <p>
+ * A {@link PrivilegePolicy} which compiles the allow and deny lists of an {@link IPrivilege} to a representation which
+ * is faster to evaluate than the lists themselves. The {@link ch.eitchnet.privilege.handler.PrivilegeHandler} compiles
+ * every {@link IPrivilege} referencing such a policy when its role is loaded, and keeps the result on the
+ * {@link IPrivilege}, see {@link IPrivilege#getCompiledRules()}, so that invalid rules are detected early and the
+ * rules are compiled only once
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public interface CompilingPolicy extends PrivilegePolicy {
+
+	/**
+	 * Compiles the allow and deny lists of the given {@link IPrivilege}
+	 * 
+	 * @param privilege
+	 *            the {@link IPrivilege} to compile
+	 * 
+	 * @return the compiled rules, which are immutable
+	 * 
+	 * @throws PrivilegeException
+	 *             if the allow or deny list contain invalid rules
+	 */
+	public abstract Object compile(IPrivilege privilege) throws PrivilegeException;
+}
@@ -16,6 +16,8 @@
 package ch.eitchnet.privilege.policy;
 
 import java.text.MessageFormat;
+import java.util.BitSet;
+import java.util.List;
 
 import ch.eitchnet.privilege.base.AccessDeniedException;
 import ch.eitchnet.privilege.base.PrivilegeException;
@@ -28,11 +30,34 @@ import ch.eitchnet.utils.helper.StringHelper;
 
 /**
  * This is a simple implementation of {@link PrivilegePolicy} which uses the {@link Restrictable#getPrivilegeName()} to
- * see if a given {@link Role} has the privilege required by the value from {@link Restrictable#getPrivilegeValue()}
+ * see if a given {@link Role} has the privilege required by the value from {@link Restrictable#getPrivilegeValue()}.
+ * As the decision only depends on the privilege and the restrictable, this policy is a {@link DeterministicPolicy},
+ * and it decides on batches of restrictables as a {@link BatchPrivilegePolicy}. Subclasses are not cached unless they
+ * declare the {@link DeterministicPolicy} marker themselves
  * 
  * @author Robert von Burg <eitch@eitchnet.ch>
  */
-public class DefaultPrivilege implements PrivilegePolicy {
+public class DefaultPrivilege implements DeterministicPolicy, BatchPrivilegePolicy {
+
+	/**
+	 * true for the subclasses which override {@link #validateAction(PrivilegeContext, IPrivilege, Restrictable)} but not
+	 * {@link #isAllowed(PrivilegeContext, IPrivilege, Restrictable)}, whose decisions must then be taken by
+	 * {@link #validateAction(PrivilegeContext, IPrivilege, Restrictable)}
+	 */
+	private static final ClassValue<Boolean> VALIDATE_ACTION_OVERRIDDEN = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			try {
+				Class<?> validateActionClass = type.getMethod("validateAction", PrivilegeContext.class, //$NON-NLS-1$
+						IPrivilege.class, Restrictable.class).getDeclaringClass();
+				Class<?> isAllowedClass = type.getMethod("isAllowed", PrivilegeContext.class, IPrivilege.class, //$NON-NLS-1$
+						Restrictable.class).getDeclaringClass();
+				return validateActionClass != isAllowedClass && isAllowedClass.isAssignableFrom(validateActionClass);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
 
 	/**
 	 * The value of {@link Restrictable#getPrivilegeValue()} is used to check if the {@link Role} has this privilege
@@ -41,29 +66,113 @@ public class DefaultPrivilege implements PrivilegePolicy {
 	 */
 	@Override
 	public void validateAction(PrivilegeContext ctx, IPrivilege privilege, Restrictable restrictable) {
+		if (!decide(privilege, restrictable)) {
+			Object[] args = { ctx.getUsername(), restrictable.getPrivilegeName(), restrictable.getClass().getName() };
+			throw new AccessDeniedException("Privilege.accessdenied.noprivilege", args, false); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * The value of {@link Restrictable#getPrivilegeValue()} is used to check if the {@link Role} has this privilege
+	 * 
+	 * @see ch.eitchnet.privilege.policy.PrivilegePolicy#isAllowed(PrivilegeContext, IPrivilege, Restrictable)
+	 */
+	@Override
+	public boolean isAllowed(PrivilegeContext ctx, IPrivilege privilege, Restrictable restrictable) {
+
+		// a subclass which only overrides validateAction() must decide the same way here
+		if (VALIDATE_ACTION_OVERRIDDEN.get(getClass()).booleanValue()) {
+			try {
+				validateAction(ctx, privilege, restrictable);
+				return true;
+			} catch (AccessDeniedException e) {
+				return false;
+			}
+		}
+
+		return decide(privilege, restrictable);
+	}
+
+	/**
+	 * The value of {@link Restrictable#getPrivilegeValue()} of each {@link Restrictable} is used to check if the
+	 * {@link Role} has this privilege
+	 * 
+	 * @see ch.eitchnet.privilege.policy.BatchPrivilegePolicy#isAllowed(PrivilegeContext, IPrivilege, List)
+	 */
+	@Override
+	public BitSet isAllowed(PrivilegeContext ctx, IPrivilege privilege, List<? extends Restrictable> restrictables) {
 
 		if (privilege == null)
 			throw new PrivilegeException(PrivilegeMessages.getString("Privilege.privilegeNull")); //$NON-NLS-1$
+
+		int size = restrictables.size();
+		BitSet allowed = new BitSet(size);
+
+		// a subclass which only overrides validateAction() must decide on every restrictable on its own
+		if (VALIDATE_ACTION_OVERRIDDEN.get(getClass()).booleanValue()) {
+			for (int i = 0; i < size; i++) {
+				if (isAllowed(ctx, privilege, restrictables.get(i)))
+					allowed.set(i);
+			}
+			return allowed;
+		}
+
+		String privilegeName = privilege.getName();
+		boolean allAllowed = privilege.isAllAllowed();
+		for (int i = 0; i < size; i++) {
+			if (isAllowed(privilege, privilegeName, allAllowed, restrictables.get(i)))
+				allowed.set(i);
+		}
+		return allowed;
+	}
+
+	private boolean decide(IPrivilege privilege, Restrictable restrictable) {
+
+		if (privilege == null)
+			throw new PrivilegeException(PrivilegeMessages.getString("Privilege.privilegeNull")); //$NON-NLS-1$
+
+		return isAllowed(privilege, privilege.getName(), privilege.isAllAllowed(), restrictable);
+	}
+
+	private boolean isAllowed(IPrivilege privilege, String privilegeName, boolean allAllowed,
+			Restrictable restrictable) {
+
 		if (restrictable == null)
 			throw new PrivilegeException(PrivilegeMessages.getString("Privilege.restrictableNull")); //$NON-NLS-1$
 
 		// get the PrivilegeName
-		String privilegeName = restrictable.getPrivilegeName();
-		if (StringHelper.isEmpty(privilegeName)) {
-			String msg = PrivilegeMessages.getString("Privilege.privilegeNameEmpty"); //$NON-NLS-1$
-			throw new PrivilegeException(MessageFormat.format(msg, restrictable));
+		String restrictablePrivilegeName = restrictable.getPrivilegeName();
+		if (StringHelper.isEmpty(restrictablePrivilegeName)) {
+			String msg = PrivilegeMessages.format("Privilege.privilegeNameEmpty", restrictable); //$NON-NLS-1$
+			throw new PrivilegeException(msg);
 		}
 
 		// we want the privileges names to match
-		if (!privilege.getName().equals(privilegeName)) {
-			throw new PrivilegeException(MessageFormat.format(
-					PrivilegeMessages.getString("Privilege.illegalArgument.privilegeNameMismatch"), //$NON-NLS-1$
-					privilege.getName(), privilegeName));
+		if (!privilegeName.equals(restrictablePrivilegeName)) {
+			throw new PrivilegeException(PrivilegeMessages.format(
+					"Privilege.illegalArgument.privilegeNameMismatch", privilegeName, restrictablePrivilegeName)); //$NON-NLS-1$
 		}
 
 		// if everything is allowed, then no need to carry on
-		if (privilege.isAllAllowed())
-			return;
+		if (allAllowed)
+			return true;
+
+		return isAllowed(privilege, restrictable);
+	}
+
+	/**
+	 * Checks the value of the given {@link Restrictable} against the deny and allow lists of the given
+	 * {@link IPrivilege}. This policy expects the value to be a {@link String}, subclasses override this method to
+	 * accept other types of values
+	 * 
+	 * @param privilege
+	 *            the {@link IPrivilege} containing the permissions
+	 * @param restrictable
+	 *            the {@link Restrictable} to which the user wants access
+	 * 
+	 * @return true if the value is not denied, and is allowed
+	 */
+	protected boolean isAllowed(IPrivilege privilege, Restrictable restrictable) {
 
 		// get the value on which the action is to be performed
 		Object object = restrictable.getPrivilegeValue();
@@ -76,23 +185,27 @@ public class DefaultPrivilege implements PrivilegePolicy {
 			throw new PrivilegeException(msg);
 		}
 
-		String privilegeValue = (String) object;
+		return isAllowed(privilege, (String) object);
+	}
 
-		// first check values not allowed
-		if (privilege.isDenied(privilegeValue)) {
-			// then throw access denied
-			String msg = MessageFormat.format(PrivilegeMessages.getString("Privilege.accessdenied.noprivilege"), //$NON-NLS-1$
-					ctx.getUsername(), privilegeName, restrictable.getClass().getName());
-			throw new AccessDeniedException(msg);
-		}
+	/**
+	 * Checks the given privilege value against the deny and allow lists of the given {@link IPrivilege}. Subclasses
+	 * override this method to interpret the values of the lists differently
+	 * 
+	 * @param privilege
+	 *            the {@link IPrivilege} containing the permissions
+	 * @param privilegeValue
+	 *            the value of the {@link Restrictable}
+	 * 
+	 * @return true if the value is not denied, and is allowed
+	 */
+	protected boolean isAllowed(IPrivilege privilege, String privilegeValue) {
 
-		// now check values allowed
-		if (privilege.isAllowed(privilegeValue))
-			return;
+		// first check values not allowed
+		if (privilege.isDenied(privilegeValue))
+			return false;
 
-		// default is not allowed
-		String msg = MessageFormat.format(PrivilegeMessages.getString("Privilege.accessdenied.noprivilege"), //$NON-NLS-1$
-				ctx.getUsername(), privilegeName, restrictable.getClass().getName());
-		throw new AccessDeniedException(msg);
+		// now check values allowed, default is not allowed
+		return privilege.isAllowed(privilegeValue);
 	}
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.policy;
+
+import ch.eitchnet.privilege.model.IPrivilege;
+import ch.eitchnet.privilege.model.PrivilegeContext;
+import ch.eitchnet.privilege.model.Restrictable;
+
+/**
+ * <p>
+ * Marker interface for {@link PrivilegePolicy}s whose decision only depends on the given {@link IPrivilege} and the
+ * {@link Restrictable#getPrivilegeName()} and {@link Restrictable#getPrivilegeValue()} of the given
+ * {@link Restrictable}, i.e. which neither keep state nor depend on the time or any other external data
+ * </p>
+ * 
+ * <p>
+ * The decisions of such policies may be cached, and the cached decisions are shared by all {@link PrivilegeContext}s
+ * of users with the same roles
+ * </p>
+ * 
+ * <p>
+ * The marker is only honoured on the class which declares it, and is not inherited by subclasses, as a subclass might
+ * override the decision with one which depends on the user. A subclass of a {@link DeterministicPolicy} must therefore
+ * declare the marker again if its decisions may be cached as well
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public interface DeterministicPolicy extends PrivilegePolicy {
+	// marker interface
+}
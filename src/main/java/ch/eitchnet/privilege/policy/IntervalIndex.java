@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.policy;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+import ch.eitchnet.privilege.base.PrivilegeException;
+
+/**
+ * <p>
+ * A sorted index of closed intervals of long values, in which overlapping and adjacent intervals are merged, so that
+ * checking if a value is contained in any interval is a binary search over primitive arrays
+ * </p>
+ * 
+ * <p>
+ * The intervals are parsed from strings of the form <code>from..to</code>, where either bound may be omitted for an
+ * open interval, e.g. <code>..-1</code> or <code>1000..</code>, or of a single value, e.g. <code>42</code>. Both
+ * bounds are inclusive
+ * </p>
+ * 
+ * <p>
+ * An {@link IntervalIndex} is immutable and may be used by multiple threads concurrently
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public final class IntervalIndex {
+
+	private static final String SEPARATOR = ".."; //$NON-NLS-1$
+
+	private final long[] starts;
+	private final long[] ends;
+
+	/**
+	 * Parses the given intervals and builds the index
+	 * 
+	 * @param intervals
+	 *            the intervals to index
+	 * 
+	 * @throws PrivilegeException
+	 *             if an interval can not be parsed
+	 */
+	public IntervalIndex(Collection<String> intervals) throws PrivilegeException {
+
+		long[][] parsed = new long[intervals.size()][];
+		int i = 0;
+		for (String interval : intervals) {
+			parsed[i++] = parse(interval);
+		}
+
+		// sort by start, then merge overlapping and adjacent intervals
+		Arrays.sort(parsed, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] o1, long[] o2) {
+				return Long.compare(o1[0], o2[0]);
+			}
+		});
+
+		long[] mergedStarts = new long[parsed.length];
+		long[] mergedEnds = new long[parsed.length];
+		int size = 0;
+		for (long[] interval : parsed) {
+			if (size > 0 && (mergedEnds[size - 1] == Long.MAX_VALUE || interval[0] <= mergedEnds[size - 1] + 1)) {
+				mergedEnds[size - 1] = Math.max(mergedEnds[size - 1], interval[1]);
+			} else {
+				mergedStarts[size] = interval[0];
+				mergedEnds[size] = interval[1];
+				size++;
+			}
+		}
+
+		this.starts = Arrays.copyOf(mergedStarts, size);
+		this.ends = Arrays.copyOf(mergedEnds, size);
+	}
+
+	/**
+	 * @param value
+	 *            the value to check
+	 * 
+	 * @return true if the given value is contained in any interval
+	 */
+	public boolean contains(long value) {
+		int index = Arrays.binarySearch(this.starts, value);
+		if (index >= 0)
+			return true;
+
+		// the interval starting before the value
+		index = -index - 2;
+		return index >= 0 && value <= this.ends[index];
+	}
+
+	/**
+	 * @param value
+	 *            the value to check
+	 * 
+	 * @return true if the given value is contained in any interval
+	 */
+	public boolean contains(double value) {
+		if (Double.isNaN(value))
+			return false;
+
+		int low = 0;
+		int high = this.starts.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (this.starts[mid] <= value)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+
+		// high is now the last interval starting at or before the value
+		return high >= 0 && value <= this.ends[high];
+	}
+
+	/**
+	 * @return the number of disjoint intervals in this index
+	 */
+	public int size() {
+		return this.starts.length;
+	}
+
+	private static long[] parse(String interval) {
+		try {
+			String trimmed = interval.trim();
+			int separatorIndex = trimmed.indexOf(SEPARATOR);
+			long start;
+			long end;
+			if (separatorIndex < 0) {
+				start = Long.parseLong(trimmed);
+				end = start;
+			} else {
+				String startS = trimmed.substring(0, separatorIndex).trim();
+				String endS = trimmed.substring(separatorIndex + SEPARATOR.length()).trim();
+				start = startS.isEmpty() ? Long.MIN_VALUE : Long.parseLong(startS);
+				end = endS.isEmpty() ? Long.MAX_VALUE : Long.parseLong(endS);
+			}
+
+			if (start > end) {
+				String msg = "The interval {0} is empty as its start is after its end"; //$NON-NLS-1$
+				throw new PrivilegeException(MessageFormat.format(msg, interval));
+			}
+			return new long[] { start, end };
+
+		} catch (NumberFormatException e) {
+			String msg = "The interval {0} is not of the form from..to"; //$NON-NLS-1$
+			throw new PrivilegeException(MessageFormat.format(msg, interval), e);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.policy;
+
+import ch.eitchnet.privilege.model.IPrivilege;
+import ch.eitchnet.privilege.model.Restrictable;
+
+/**
+ * <p>
+ * A {@link DefaultPrivilege} in which the values of the allow and deny lists are glob patterns: <code>*</code> matches
+ * any sequence of characters and <code>?</code> matches exactly one character, e.g. <code>/orders/*</code> allows all
+ * values starting with <code>/orders/</code>. A value without wildcards only matches itself, as in the
+ * {@link DefaultPrivilege}
+ * </p>
+ * 
+ * <p>
+ * The patterns of the allow and deny lists are compiled to a {@link PatternTrie} each when the role is loaded, so that
+ * the cost of checking a {@link Restrictable} depends on the length of its value and not on the number of patterns. A
+ * value matching a deny pattern is denied, even if it also matches an allow pattern
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class PatternPrivilege extends DefaultPrivilege implements DeterministicPolicy, CompilingPolicy {
+
+	@Override
+	public Object compile(IPrivilege privilege) {
+		return new PatternRules(new PatternTrie(privilege.getDenyList()), new PatternTrie(privilege.getAllowList()));
+	}
+
+	@Override
+	protected boolean isAllowed(IPrivilege privilege, String privilegeValue) {
+		Object compiledRules = privilege.getCompiledRules();
+		PatternRules rules;
+		if (compiledRules instanceof PatternRules) {
+			rules = (PatternRules) compiledRules;
+		} else {
+			// the privilege was not compiled by the handler, so compile it now
+			rules = (PatternRules) compile(privilege);
+			privilege.setCompiledRules(rules);
+		}
+
+		// first check values not allowed
+		if (rules.denyTrie.matches(privilegeValue))
+			return false;
+
+		// now check values allowed, default is not allowed
+		return rules.allowTrie.matches(privilegeValue);
+	}
+
+	private static class PatternRules {
+		private final PatternTrie denyTrie;
+		private final PatternTrie allowTrie;
+
+		private PatternRules(PatternTrie denyTrie, PatternTrie allowTrie) {
+			this.denyTrie = denyTrie;
+			this.allowTrie = allowTrie;
+		}
+	}
+}
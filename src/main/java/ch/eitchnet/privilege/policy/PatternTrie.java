@@ -0,0 +1,215 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.policy;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * <p>
+ * A trie compiled from a set of glob patterns, in which <code>*</code> matches any sequence of characters, including
+ * the empty sequence, and <code>?</code> matches exactly one character. All other characters match themselves, so that
+ * a pattern without wildcards is an exact value and a pattern ending with <code>*</code> is a prefix
+ * </p>
+ * 
+ * <p>
+ * The trie is used as a nondeterministic automaton: a value is matched by following the edges for its characters from
+ * all currently active nodes at once. As patterns with a common prefix share their nodes, the cost of matching is
+ * proportional to the length of the value and does not depend on the number of patterns, as long as the patterns do
+ * not use many wildcards
+ * </p>
+ * 
+ * <p>
+ * A {@link PatternTrie} is immutable once compiled and may be used by multiple threads concurrently
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public final class PatternTrie {
+
+	private final Node root;
+	private final boolean empty;
+
+	/**
+	 * Compiles the given patterns to a {@link PatternTrie}
+	 * 
+	 * @param patterns
+	 *            the glob patterns to compile
+	 */
+	public PatternTrie(Collection<String> patterns) {
+		this.root = new Node(false);
+		for (String pattern : patterns) {
+			add(pattern);
+		}
+		this.root.freeze();
+		this.empty = patterns.isEmpty();
+	}
+
+	/**
+	 * Returns true if the given value matches any of the patterns of this trie
+	 * 
+	 * @param value
+	 *            the value to match
+	 * 
+	 * @return true if the value matches at least one pattern, false if not
+	 */
+	public boolean matches(String value) {
+		if (this.empty)
+			return false;
+
+		Frontier active = new Frontier();
+		Frontier next = new Frontier();
+		active.activate(this.root);
+
+		int length = value.length();
+		for (int i = 0; i < length && active.size > 0; i++) {
+			char c = value.charAt(i);
+			next.size = 0;
+			for (int j = 0; j < active.size; j++) {
+				Node node = active.nodes[j];
+				if (node.loop)
+					next.activate(node);
+				Node child = node.child(c);
+				if (child != null)
+					next.activate(child);
+				if (node.any != null)
+					next.activate(node.any);
+			}
+
+			Frontier tmp = active;
+			active = next;
+			next = tmp;
+		}
+
+		for (int j = 0; j < active.size; j++) {
+			if (active.nodes[j].terminal)
+				return true;
+		}
+		return false;
+	}
+
+	private void add(String pattern) {
+		Node node = this.root;
+		int length = pattern.length();
+		for (int i = 0; i < length; i++) {
+			char c = pattern.charAt(i);
+			if (c == '*') {
+				// consecutive wildcards are the same as a single one
+				if (!node.loop) {
+					if (node.star == null)
+						node.star = new Node(true);
+					node = node.star;
+				}
+			} else if (c == '?') {
+				if (node.any == null)
+					node.any = new Node(false);
+				node = node.any;
+			} else {
+				node = node.addChild(c);
+			}
+		}
+		node.terminal = true;
+	}
+
+	/**
+	 * The set of currently active nodes of the automaton
+	 */
+	private static final class Frontier {
+
+		private Node[] nodes = new Node[8];
+		private int size;
+
+		/**
+		 * Adds the given node and the nodes reachable from it without consuming a character, ignoring nodes which are
+		 * already active
+		 */
+		private void activate(Node node) {
+			while (node != null) {
+				if (!contains(node)) {
+					if (this.size == this.nodes.length)
+						this.nodes = Arrays.copyOf(this.nodes, this.size * 2);
+					this.nodes[this.size++] = node;
+				}
+				node = node.star;
+			}
+		}
+
+		private boolean contains(Node node) {
+			for (int i = 0; i < this.size; i++) {
+				if (this.nodes[i] == node)
+					return true;
+			}
+			return false;
+		}
+	}
+
+	private static final class Node {
+
+		private final boolean loop;
+		private boolean terminal;
+		private Node star;
+		private Node any;
+
+		private char[] keys;
+		private Node[] children;
+		private int nrOfChildren;
+
+		private Node(boolean loop) {
+			this.loop = loop;
+			this.keys = new char[0];
+			this.children = new Node[0];
+		}
+
+		private Node child(char c) {
+			int index = Arrays.binarySearch(this.keys, 0, this.nrOfChildren, c);
+			return index < 0 ? null : this.children[index];
+		}
+
+		private Node addChild(char c) {
+			int index = Arrays.binarySearch(this.keys, 0, this.nrOfChildren, c);
+			if (index >= 0)
+				return this.children[index];
+
+			index = -index - 1;
+			if (this.nrOfChildren == this.keys.length) {
+				int capacity = Math.max(2, this.keys.length * 2);
+				this.keys = Arrays.copyOf(this.keys, capacity);
+				this.children = Arrays.copyOf(this.children, capacity);
+			}
+			System.arraycopy(this.keys, index, this.keys, index + 1, this.nrOfChildren - index);
+			System.arraycopy(this.children, index, this.children, index + 1, this.nrOfChildren - index);
+			Node child = new Node(false);
+			this.keys[index] = c;
+			this.children[index] = child;
+			this.nrOfChildren++;
+			return child;
+		}
+
+		private void freeze() {
+			if (this.keys.length != this.nrOfChildren) {
+				this.keys = Arrays.copyOf(this.keys, this.nrOfChildren);
+				this.children = Arrays.copyOf(this.children, this.nrOfChildren);
+			}
+			for (Node child : this.children) {
+				child.freeze();
+			}
+			if (this.star != null)
+				this.star.freeze();
+			if (this.any != null)
+				this.any.freeze();
+		}
+	}
+}
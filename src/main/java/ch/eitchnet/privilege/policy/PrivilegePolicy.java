@@ -16,6 +16,7 @@
 package ch.eitchnet.privilege.policy;
 
 import ch.eitchnet.privilege.base.AccessDeniedException;
+import ch.eitchnet.privilege.base.PrivilegeException;
 import ch.eitchnet.privilege.model.IPrivilege;
 import ch.eitchnet.privilege.model.PrivilegeContext;
 import ch.eitchnet.privilege.model.Restrictable;
@@ -29,7 +30,21 @@ import ch.eitchnet.privilege.model.internal.User;
  * </p>
  * 
  * <p>
- * TODO
+ * A policy is instantiated once by the {@link ch.eitchnet.privilege.handler.PrivilegeHandler} and the instance is
+ * shared by all {@link PrivilegeContext}s, thus implementations must be thread safe. Policies which keep state must
+ * implement {@link StatefulPolicy} so that every {@link PrivilegeContext} gets its own instance
+ * </p>
+ * 
+ * <p>
+ * <b>Important:</b> {@link #validateAction(PrivilegeContext, IPrivilege, Restrictable)} and
+ * {@link #isAllowed(PrivilegeContext, IPrivilege, Restrictable)} must always come to the same decision, as
+ * {@link PrivilegeContext#isAllowed(Restrictable)} and {@link PrivilegeContext#filter(java.util.Collection)} only call
+ * {@link #isAllowed(PrivilegeContext, IPrivilege, Restrictable)}. A policy which overrides one of them must therefore
+ * override the other as well. Subclasses of {@link DefaultPrivilege} written before
+ * {@link #isAllowed(PrivilegeContext, IPrivilege, Restrictable)} existed, which only override
+ * {@link #validateAction(PrivilegeContext, IPrivilege, Restrictable)}, are detected by the {@link DefaultPrivilege}
+ * and their override is then also called for {@link #isAllowed(PrivilegeContext, IPrivilege, Restrictable)}, at the
+ * cost of an {@link AccessDeniedException} for every denial
  * </p>
  * 
  * @author Robert von Burg <eitch@eitchnet.ch>
@@ -51,4 +66,24 @@ public interface PrivilegePolicy {
 	 */
 	public abstract void validateAction(PrivilegeContext context, IPrivilege privilege, Restrictable restrictable)
 			throws AccessDeniedException;
+
+	/**
+	 * Checks if the given {@link Role} and the given {@link IPrivilege} has access to the given {@link Restrictable}.
+	 * In contrast to {@link #validateAction(PrivilegeContext, IPrivilege, Restrictable)} a denial is returned instead
+	 * of thrown, so that checking many {@link Restrictable}s of which most are denied is cheap
+	 * 
+	 * @param context
+	 *            the privilege context
+	 * @param privilege
+	 *            the {@link IPrivilege} containing the permissions
+	 * @param restrictable
+	 *            the {@link Restrictable} to which the user wants access
+	 * 
+	 * @return true if the action is allowed, false if not
+	 * 
+	 * @throws PrivilegeException
+	 *             if there is an internal error due to wrongly configured privileges or programming errors
+	 */
+	public abstract boolean isAllowed(PrivilegeContext context, IPrivilege privilege, Restrictable restrictable)
+			throws PrivilegeException;
 }
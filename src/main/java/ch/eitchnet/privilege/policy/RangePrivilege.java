@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.policy;
+
+import java.math.BigInteger;
+import java.text.MessageFormat;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.model.IPrivilege;
+import ch.eitchnet.privilege.model.Restrictable;
+
+/**
+ * <p>
+ * A {@link DefaultPrivilege} for numeric privilege values, in which the values of the allow and deny lists are
+ * intervals of long values of the form <code>from..to</code>, e.g. <code>0..10000</code> for an amount limit. Either
+ * bound may be omitted for an open interval and a single number is an interval containing only that number, see
+ * {@link IntervalIndex}. A value in a denied interval is denied, even if it is also in an allowed interval
+ * </p>
+ * 
+ * <p>
+ * The value of the {@link Restrictable} must be a {@link Number}. Integral values are compared as long values, all
+ * other values as double values. The intervals are compiled to an {@link IntervalIndex} each when the role is loaded,
+ * so that checking a value is a binary search
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class RangePrivilege extends DefaultPrivilege implements DeterministicPolicy, CompilingPolicy {
+
+	@Override
+	public Object compile(IPrivilege privilege) {
+		try {
+			return new RangeRules(new IntervalIndex(privilege.getDenyList()), new IntervalIndex(
+					privilege.getAllowList()));
+		} catch (PrivilegeException e) {
+			String msg = "The allow or deny list of Privilege {0} is invalid: {1}"; //$NON-NLS-1$
+			throw new PrivilegeException(MessageFormat.format(msg, privilege.getName(), e.getMessage()), e);
+		}
+	}
+
+	@Override
+	protected boolean isAllowed(IPrivilege privilege, Restrictable restrictable) {
+
+		// RangePrivilege policy expects the privilege value to be a number
+		Object object = restrictable.getPrivilegeValue();
+		if (!(object instanceof Number)) {
+			String msg = "{0} of {1} must be a Number for the RangePrivilege policy, but is {2}"; //$NON-NLS-1$
+			msg = MessageFormat.format(msg, Restrictable.class.getName(), restrictable.getClass().getSimpleName(),
+					object == null ? null : object.getClass().getName());
+			throw new PrivilegeException(msg);
+		}
+
+		Object compiledRules = privilege.getCompiledRules();
+		RangeRules rules;
+		if (compiledRules instanceof RangeRules) {
+			rules = (RangeRules) compiledRules;
+		} else {
+			// the privilege was not compiled by the handler, so compile it now
+			rules = (RangeRules) compile(privilege);
+			privilege.setCompiledRules(rules);
+		}
+
+		Number value = (Number) object;
+		if (isIntegral(value)) {
+			long longValue = value.longValue();
+
+			// first check values not allowed, then values allowed, default is not allowed
+			return !rules.denyIndex.contains(longValue) && rules.allowIndex.contains(longValue);
+		}
+
+		double doubleValue = value.doubleValue();
+		return !rules.denyIndex.contains(doubleValue) && rules.allowIndex.contains(doubleValue);
+	}
+
+	@Override
+	protected boolean isAllowed(IPrivilege privilege, String privilegeValue) {
+		throw new PrivilegeException("The RangePrivilege policy only accepts numeric values"); //$NON-NLS-1$
+	}
+
+	private static boolean isIntegral(Number value) {
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+				|| value instanceof AtomicLong || value instanceof AtomicInteger)
+			return true;
+		return value instanceof BigInteger && ((BigInteger) value).bitLength() < 64;
+	}
+
+	private static class RangeRules {
+		private final IntervalIndex denyIndex;
+		private final IntervalIndex allowIndex;
+
+		private RangeRules(IntervalIndex denyIndex, IntervalIndex allowIndex) {
+			this.denyIndex = denyIndex;
+			this.allowIndex = allowIndex;
+		}
+	}
+}
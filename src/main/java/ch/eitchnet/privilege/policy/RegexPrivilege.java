@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.policy;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.model.IPrivilege;
+import ch.eitchnet.privilege.model.Restrictable;
+
+/**
+ * <p>
+ * A {@link DefaultPrivilege} in which the values of the allow and deny lists are regular expressions as defined by
+ * {@link Pattern}, which must match the whole value of the {@link Restrictable}, e.g. <code>T[0-9]{3}</code> allows the
+ * tenant codes <code>T000</code> to <code>T999</code>. A value matching a deny expression is denied, even if it also
+ * matches an allow expression
+ * </p>
+ * 
+ * <p>
+ * The expressions are compiled once when the role is loaded, and an invalid expression fails the loading of the role.
+ * The expressions of a list are combined into a single alternation, so that a value is matched in one pass. Expressions
+ * which might change their meaning when combined are compiled on their own: expressions with back references, as their
+ * group numbers would change, with named groups, as a name may only be used once, with quotes, as a <code>\Q</code>
+ * without <code>\E</code> would quote the following alternatives, and with comments, as a comment would swallow the
+ * end of the group. If the combined expression still fails to compile, then all expressions are compiled on their own
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class RegexPrivilege extends DefaultPrivilege implements DeterministicPolicy, CompilingPolicy {
+
+	private static final Logger logger = LoggerFactory.getLogger(RegexPrivilege.class);
+
+	/**
+	 * finds the constructs of an expression which might change its meaning in a combined expression: back references,
+	 * quotes, named groups, the comments flag and comments
+	 */
+	private static final Pattern NOT_COMBINABLE = Pattern.compile("\\\\(?:[1-9]|k<|Q)" //$NON-NLS-1$
+			+ "|\\(\\?<|\\(\\?[a-zA-Z-]*x|#"); //$NON-NLS-1$
+
+	@Override
+	public Object compile(IPrivilege privilege) {
+		return new RegexRules(compile(privilege, privilege.getDenyList()), compile(privilege, privilege.getAllowList()));
+	}
+
+	private static Pattern[] compile(IPrivilege privilege, Collection<String> expressions) {
+
+		List<Pattern> patterns = new ArrayList<>();
+		List<Pattern> combinedPatterns = new ArrayList<>();
+		StringBuilder combined = new StringBuilder();
+		for (String expression : expressions) {
+			try {
+				Pattern pattern = Pattern.compile(expression);
+				if (NOT_COMBINABLE.matcher(expression).find()) {
+					patterns.add(pattern);
+				} else {
+					combinedPatterns.add(pattern);
+					if (combined.length() > 0)
+						combined.append('|');
+					combined.append("(?:").append(expression).append(')'); //$NON-NLS-1$
+				}
+			} catch (PatternSyntaxException e) {
+				String msg = "The expression {0} of Privilege {1} is not a valid regular expression: {2}"; //$NON-NLS-1$
+				msg = MessageFormat.format(msg, expression, privilege.getName(), e.getDescription());
+				throw new PrivilegeException(msg, e);
+			}
+		}
+
+		if (combinedPatterns.size() == 1) {
+			patterns.add(0, combinedPatterns.get(0));
+		} else if (!combinedPatterns.isEmpty()) {
+			try {
+				patterns.add(0, Pattern.compile(combined.toString()));
+			} catch (PatternSyntaxException e) {
+				String msg = "The expressions of Privilege {0} can not be combined, matching them one by one: {1}"; //$NON-NLS-1$
+				logger.warn(MessageFormat.format(msg, privilege.getName(), e.getDescription()));
+				patterns.addAll(0, combinedPatterns);
+			}
+		}
+		return patterns.toArray(new Pattern[patterns.size()]);
+	}
+
+	@Override
+	protected boolean isAllowed(IPrivilege privilege, String privilegeValue) {
+		Object compiledRules = privilege.getCompiledRules();
+		RegexRules rules;
+		if (compiledRules instanceof RegexRules) {
+			rules = (RegexRules) compiledRules;
+		} else {
+			// the privilege was not compiled by the handler, so compile it now
+			rules = (RegexRules) compile(privilege);
+			privilege.setCompiledRules(rules);
+		}
+
+		// first check values not allowed
+		if (matches(rules.denyPatterns, privilegeValue))
+			return false;
+
+		// now check values allowed, default is not allowed
+		return matches(rules.allowPatterns, privilegeValue);
+	}
+
+	private static boolean matches(Pattern[] patterns, String value) {
+		for (Pattern pattern : patterns) {
+			if (pattern.matcher(value).matches())
+				return true;
+		}
+		return false;
+	}
+
+	private static class RegexRules {
+		private final Pattern[] denyPatterns;
+		private final Pattern[] allowPatterns;
+
+		private RegexRules(Pattern[] denyPatterns, Pattern[] allowPatterns) {
+			this.denyPatterns = denyPatterns;
+			this.allowPatterns = allowPatterns;
+		}
+	}
+}
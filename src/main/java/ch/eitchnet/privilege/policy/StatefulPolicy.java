@@ -0,0 +1,30 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.policy;
+
+/**
+ * <p>
+ * Marker interface for {@link PrivilegePolicy}s which keep state and thus may not be shared between
+ * {@link ch.eitchnet.privilege.model.PrivilegeContext}s. A new instance of such a policy is created for every
+ * {@link ch.eitchnet.privilege.model.PrivilegeContext}, while all other policies are instantiated only once and shared
+ * by all {@link ch.eitchnet.privilege.model.PrivilegeContext}s, and thus must be thread safe
+ * </p>
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public interface StatefulPolicy extends PrivilegePolicy {
+	// marker interface
+}
@@ -99,6 +99,24 @@ public class PrivilegeConfigDomWriter {
 			parametersElement.appendChild(parameterElement);
 		}
 
+		// create SessionStore, if one is configured
+		if (this.containerModel.getSessionStoreClassName() != null) {
+			Element sessionStoreElem = doc.createElement(XmlConstants.XML_SESSION_STORE);
+			containerElement.appendChild(sessionStoreElem);
+			sessionStoreElem.setAttribute(XmlConstants.XML_ATTR_CLASS, this.containerModel.getSessionStoreClassName());
+			// Parameters
+			parametersElement = doc.createElement(XmlConstants.XML_PARAMETERS);
+			sessionStoreElem.appendChild(parametersElement);
+			if (this.containerModel.getSessionStoreParameterMap() != null) {
+				for (Entry<String, String> entry : this.containerModel.getSessionStoreParameterMap().entrySet()) {
+					parameterElement = doc.createElement(XmlConstants.XML_PARAMETER);
+					parameterElement.setAttribute(XmlConstants.XML_ATTR_NAME, entry.getKey());
+					parameterElement.setAttribute(XmlConstants.XML_ATTR_VALUE, entry.getValue());
+					parametersElement.appendChild(parameterElement);
+				}
+			}
+		}
+
 		// Policies
 		Element policiesElem = doc.createElement(XmlConstants.XML_POLICIES);
 		rootElement.appendChild(policiesElem);
@@ -104,6 +104,11 @@ public class PrivilegeConfigSaxReader extends DefaultHandler {
 //		        <Parameter name="modelXmlFile" value="PrivilegeModel.xml" />
 //		      </Parameters>
 //		    </PersistenceHandler>
+//		    <SessionStore class="ch.eitchnet.privilege.handler.FileSessionStore">
+//		      <Parameters>
+//		        <Parameter name="basePath" value="./target/sessions" />
+//		      </Parameters>
+//		    </SessionStore>
 //		  </Container>
 
 		private String currentElement;
@@ -120,6 +125,10 @@ public class PrivilegeConfigSaxReader extends DefaultHandler {
 				this.currentElement = qName;
 				String className = attributes.getValue(XmlConstants.XML_ATTR_CLASS);
 				getContainerModel().setPersistenceHandlerClassName(className);
+			} else if (qName.equals(XmlConstants.XML_SESSION_STORE)) {
+				this.currentElement = qName;
+				String className = attributes.getValue(XmlConstants.XML_ATTR_CLASS);
+				getContainerModel().setSessionStoreClassName(className);
 			}
 		}
 
@@ -136,6 +145,8 @@ public class PrivilegeConfigSaxReader extends DefaultHandler {
 				getContainerModel().setEncryptionHandlerParameterMap(parametersChild.getParameterMap());
 			} else if (this.currentElement.equals(XmlConstants.XML_HANDLER_PERSISTENCE)) {
 				getContainerModel().setPersistenceHandlerParameterMap(parametersChild.getParameterMap());
+			} else if (this.currentElement.equals(XmlConstants.XML_SESSION_STORE)) {
+				getContainerModel().setSessionStoreParameterMap(parametersChild.getParameterMap());
 			}
 		}
 	}
@@ -117,6 +117,15 @@ public class PrivilegeModelDomWriter {
 			rolesElement.appendChild(roleElement);
 
 			roleElement.setAttribute(XmlConstants.XML_ATTR_NAME, role.getName());
+			if (!role.getParentRoleNames().isEmpty()) {
+				StringBuilder sb = new StringBuilder();
+				for (String parentRoleName : role.getParentRoleNames()) {
+					if (sb.length() > 0)
+						sb.append(',');
+					sb.append(parentRoleName);
+				}
+				roleElement.setAttribute(XmlConstants.XML_ATTR_EXTENDS, sb.toString());
+			}
 
 			for (String privilegeName : role.getPrivilegeNames()) {
 				IPrivilege privilege = role.getPrivilege(privilegeName);
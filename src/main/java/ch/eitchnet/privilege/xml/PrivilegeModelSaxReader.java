@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -127,6 +128,9 @@ public class PrivilegeModelSaxReader extends DefaultHandler {
 //	  <Privilege name="ch.eitchnet.privilege.test.model.TestSystemRestrictable">
 //	    <AllAllowed>true</AllAllowed>
 //	  </Privilege>
+//	</Role>
+//	<Role name="AppAdmin" extends="AppUser,system_admin_privileges">
+//	  ...
 //	</Role>
 
 	public class RoleParser extends ElementParserAdapter {
@@ -134,6 +138,7 @@ public class PrivilegeModelSaxReader extends DefaultHandler {
 		private StringBuilder text;
 
 		private String roleName;
+		private Set<String> parentRoleNames;
 		private String privilegeName;
 		private String privilegePolicy;
 		private boolean allAllowed;
@@ -152,6 +157,7 @@ public class PrivilegeModelSaxReader extends DefaultHandler {
 			this.text = null;
 
 			this.roleName = null;
+			this.parentRoleNames = null;
 			this.privilegeName = null;
 			this.privilegePolicy = null;
 			this.allAllowed = false;
@@ -166,6 +172,7 @@ public class PrivilegeModelSaxReader extends DefaultHandler {
 
 			if (qName.equals(XmlConstants.XML_ROLE)) {
 				this.roleName = attributes.getValue(XmlConstants.XML_ATTR_NAME);
+				this.parentRoleNames = parseParentRoleNames(attributes.getValue(XmlConstants.XML_ATTR_EXTENDS));
 			} else if (qName.equals(XmlConstants.XML_PRIVILEGE)) {
 				this.privilegeName = attributes.getValue(XmlConstants.XML_ATTR_NAME);
 				this.privilegePolicy = attributes.getValue(XmlConstants.XML_ATTR_POLICY);
@@ -193,15 +200,34 @@ public class PrivilegeModelSaxReader extends DefaultHandler {
 						this.denyList, this.allowList);
 				this.privileges.put(this.privilegeName, privilege);
 
+				// the next privilege of the role needs its own lists and must not inherit the all allowed flag
+				this.allAllowed = false;
+				this.denyList = new HashSet<String>();
+				this.allowList = new HashSet<String>();
+
 			} else if (qName.equals(XmlConstants.XML_ROLE)) {
 
-				Role role = new Role(this.roleName, this.privileges);
+				Role role = new Role(this.roleName, this.parentRoleNames, this.privileges);
 
 				getRoles().add(role);
 				logger.info(MessageFormat.format("New Role: {0}", role)); //$NON-NLS-1$
 				init();
 			}
 		}
+
+		private Set<String> parseParentRoleNames(String extendsS) {
+			if (StringHelper.isEmpty(extendsS))
+				return null;
+
+			// the order of the parents defines their precedence
+			Set<String> parentRoleNames = new LinkedHashSet<String>();
+			for (String parentRoleName : extendsS.split(",")) { //$NON-NLS-1$
+				parentRoleName = parentRoleName.trim();
+				if (!parentRoleName.isEmpty())
+					parentRoleNames.add(parentRoleName);
+			}
+			return parentRoleNames;
+		}
 	}
 
 //	<User userId="1" username="admin" password="8c6976e5b5410415bde908bd4dee15dfb167a9c873fc4bb8a81f6f2ab448a918">
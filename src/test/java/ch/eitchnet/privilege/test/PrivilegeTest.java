@@ -16,13 +16,24 @@
 package ch.eitchnet.privilege.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -35,20 +46,36 @@ import org.slf4j.LoggerFactory;
 
 import ch.eitchnet.privilege.base.AccessDeniedException;
 import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.handler.AuditLog;
+import ch.eitchnet.privilege.handler.CertificateSigner;
+import ch.eitchnet.privilege.handler.DefaultPrivilegeHandler;
+import ch.eitchnet.privilege.handler.FileSessionStore;
 import ch.eitchnet.privilege.handler.PrivilegeHandler;
 import ch.eitchnet.privilege.helper.PrivilegeInitializationHelper;
 import ch.eitchnet.privilege.model.Certificate;
+import ch.eitchnet.privilege.model.IPrivilege;
 import ch.eitchnet.privilege.model.PrivilegeContext;
 import ch.eitchnet.privilege.model.PrivilegeRep;
 import ch.eitchnet.privilege.model.Restrictable;
 import ch.eitchnet.privilege.model.RoleRep;
+import ch.eitchnet.privilege.model.RoleSetView;
+import ch.eitchnet.privilege.model.SessionDataMap;
 import ch.eitchnet.privilege.model.UserRep;
 import ch.eitchnet.privilege.model.UserState;
+import ch.eitchnet.privilege.model.internal.PrivilegeContainerModel;
+import ch.eitchnet.privilege.model.internal.PrivilegeImpl;
+import ch.eitchnet.privilege.test.model.CountingPersistenceHandler;
+import ch.eitchnet.privilege.test.model.TestIdentifiedRestrictable;
 import ch.eitchnet.privilege.test.model.TestRestrictable;
+import ch.eitchnet.privilege.test.model.TestSessionPolicy;
+import ch.eitchnet.privilege.test.model.TestStatefulPolicy;
 import ch.eitchnet.privilege.test.model.TestSystemUserAction;
 import ch.eitchnet.privilege.test.model.TestSystemUserActionDeny;
+import ch.eitchnet.privilege.test.model.TestValueRestrictable;
+import ch.eitchnet.privilege.xml.PrivilegeConfigSaxReader;
 import ch.eitchnet.utils.helper.ArraysHelper;
 import ch.eitchnet.utils.helper.FileHelper;
+import ch.eitchnet.utils.helper.XmlHelper;
 
 /**
  * JUnit for performing Privilege tests. This JUnit is by no means complete, but checks the bare minimum.br />
@@ -154,6 +181,26 @@ public class PrivilegeTest {
 		}
 	}
 
+	/**
+	 * Initializes a new {@link PrivilegeHandler} from the test configuration with the given additional container
+	 * parameters
+	 */
+	private PrivilegeHandler initializeWithParameters(Map<String, String> parameterMap) {
+		PrivilegeContainerModel containerModel = readContainerModel();
+		containerModel.getParameterMap().putAll(parameterMap);
+		return PrivilegeInitializationHelper.initializeFromXml(containerModel);
+	}
+
+	private PrivilegeContainerModel readContainerModel() {
+		String pwd = System.getProperty("user.dir");
+		File privilegeConfigFile = new File(pwd + "/config/Privilege.xml");
+
+		PrivilegeContainerModel containerModel = new PrivilegeContainerModel();
+		PrivilegeConfigSaxReader xmlHandler = new PrivilegeConfigSaxReader(containerModel);
+		XmlHelper.parseDocument(privilegeConfigFile, xmlHandler);
+		return containerModel;
+	}
+
 	private void login(String username, byte[] password) {
 		Certificate certificate = privilegeHandler.authenticate(username, password);
 		assertTrue("Certificate is null!", certificate != null);
@@ -308,6 +355,960 @@ public class PrivilegeTest {
 		}
 	}
 
+	@Test
+	public void testPrivilegeContextWithPrivilegeId() {
+		try {
+			login(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+			Restrictable restrictable = new TestIdentifiedRestrictable();
+			this.ctx.validateAction(restrictable);
+		} finally {
+			logout();
+		}
+	}
+
+	@Test
+	public void testPrivilegeContextIsAllowed() {
+		try {
+			login(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+			assertTrue(this.ctx.isAllowed(new TestRestrictable()));
+			assertTrue(this.ctx.hasPrivilege(TestRestrictable.class.getName()));
+			assertFalse(this.ctx.hasPrivilege("UnknownPrivilege"));
+			assertFalse(this.ctx.isAllowed(new Restrictable() {
+				@Override
+				public String getPrivilegeName() {
+					return "UnknownPrivilege";
+				}
+
+				@Override
+				public Object getPrivilegeValue() {
+					return "value";
+				}
+			}));
+		} finally {
+			logout();
+		}
+	}
+
+	@Test
+	public void testAccessDeniedMessageKey() {
+		try {
+			login(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+			try {
+				this.ctx.validateAction(new TestValueRestrictable("UnknownPrivilege", "value"));
+				fail("Access should have been denied");
+			} catch (AccessDeniedException e) {
+				assertEquals("Privilege.accessdenied.noprivilege", e.getMessageKey());
+				assertEquals("User admin does not have Privilege UnknownPrivilege needed for Restrictable "
+						+ TestValueRestrictable.class.getName(), e.getMessage());
+			}
+		} finally {
+			logout();
+		}
+	}
+
+	@Test
+	public void testPrivilegeContextBatch() {
+		try {
+			login(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+			List<TestRestrictable> restrictables = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				restrictables.add(new TestRestrictable());
+			}
+			assertEquals(10, this.ctx.isAllowed(restrictables).cardinality());
+			assertEquals(restrictables, this.ctx.filter(restrictables));
+		} finally {
+			logout();
+		}
+	}
+
+	@Test
+	public void testPrivilegeContextBatchWithMixedPrivileges() {
+		try {
+			login(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+			List<Restrictable> restrictables = new ArrayList<>();
+			restrictables.add(new TestRestrictable());
+			restrictables.add(new TestValueRestrictable("UnknownPrivilege", "value"));
+			restrictables.add(new TestRestrictable());
+
+			// every restrictable is decided by its own privilege
+			BitSet allowed = this.ctx.isAllowed(restrictables);
+			assertEquals(2, allowed.cardinality());
+			assertFalse(allowed.get(1));
+			assertEquals(Arrays.asList(restrictables.get(0), restrictables.get(2)), this.ctx.filter(restrictables));
+		} finally {
+			logout();
+		}
+	}
+
+	@Test
+	public void testSessionIdleTimeout() throws Exception {
+		this.exception.expect(AccessDeniedException.class);
+		this.exception.expectMessage("has expired");
+
+		Map<String, String> parameterMap = new HashMap<String, String>();
+		parameterMap.put("sessionIdleTimeout", "1");
+		PrivilegeHandler handler = initializeWithParameters(parameterMap);
+		try {
+			Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+			handler.isCertificateValid(certificate);
+
+			// let the session become idle, without waiting for the expiry wheel to evict it
+			certificate.setLastAccess(certificate.getLastAccess() - 1100L);
+			handler.isCertificateValid(certificate);
+		} finally {
+			((DefaultPrivilegeHandler) handler).destroy();
+		}
+	}
+
+	@Test
+	public void testSignedCertificateOnOtherHandler() throws Exception {
+		Map<String, String> parameterMap = new HashMap<String, String>();
+		parameterMap.put("sessionAbsoluteTimeout", "60");
+		parameterMap.put("certificateSigningKey", "a-secret-key-shared-by-all-nodes");
+		PrivilegeHandler handler = initializeWithParameters(parameterMap);
+		PrivilegeHandler otherHandler = initializeWithParameters(parameterMap);
+		try {
+			Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+
+			// the other handler does not know the session, but accepts the signed certificate
+			otherHandler.isCertificateValid(certificate);
+			assertEquals(ADMIN, otherHandler.getPrivilegeContext(certificate).getUsername());
+
+			// once logged out, the session is not restored again
+			assertTrue(otherHandler.invalidateSession(certificate));
+			this.exception.expect(AccessDeniedException.class);
+			this.exception.expectMessage("There is no session information");
+			otherHandler.isCertificateValid(certificate);
+		} finally {
+			((DefaultPrivilegeHandler) handler).destroy();
+			((DefaultPrivilegeHandler) otherHandler).destroy();
+		}
+	}
+
+	@Test
+	public void testRoleSetVersion() {
+		// the role names have the same hash code, but the role sets must still differ
+		assertFalse(CertificateSigner.getRoleSetVersion(Arrays.asList("Aa")).equals(
+				CertificateSigner.getRoleSetVersion(Arrays.asList("BB"))));
+		assertEquals(CertificateSigner.getRoleSetVersion(Arrays.asList("AppUser", "PrivilegeAdmin")),
+				CertificateSigner.getRoleSetVersion(Arrays.asList("PrivilegeAdmin", "AppUser")));
+	}
+
+	@Test
+	public void testSignedCertificateWithEmptySignature() throws Exception {
+		Map<String, String> parameterMap = new HashMap<String, String>();
+		parameterMap.put("sessionAbsoluteTimeout", "60");
+		parameterMap.put("certificateSigningKey", "a-secret-key-shared-by-all-nodes");
+		PrivilegeHandler handler = initializeWithParameters(parameterMap);
+		PrivilegeHandler otherHandler = initializeWithParameters(parameterMap);
+		try {
+			Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+			String authToken = certificate.getAuthToken();
+			Certificate forged = new Certificate(certificate.getSessionId(), certificate.getLoginTime(), ADMIN, null,
+					null, authToken.substring(0, authToken.lastIndexOf('.') + 1), certificate.getLocale(),
+					new HashMap<String, String>());
+
+			// a token with an empty signature is denied like any other invalid token
+			this.exception.expect(AccessDeniedException.class);
+			this.exception.expectMessage("There is no session information");
+			otherHandler.isCertificateValid(forged);
+		} finally {
+			((DefaultPrivilegeHandler) handler).destroy();
+			((DefaultPrivilegeHandler) otherHandler).destroy();
+		}
+	}
+
+	@Test
+	public void testSignedCertificateIdleOnlyOnThisNode() throws Exception {
+		Map<String, String> parameterMap = new HashMap<String, String>();
+		parameterMap.put("sessionIdleTimeout", "1");
+		parameterMap.put("sessionAbsoluteTimeout", "60");
+		parameterMap.put("certificateSigningKey", "a-secret-key-shared-by-all-nodes");
+		PrivilegeHandler handler = initializeWithParameters(parameterMap);
+		PrivilegeHandler otherHandler = initializeWithParameters(parameterMap);
+		try {
+			Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+
+			// the session is kept active on the first node for longer than the idle timeout
+			Thread.sleep(600L);
+			handler.isCertificateValid(certificate);
+			Thread.sleep(600L);
+			handler.isCertificateValid(certificate);
+
+			// the other node must not consider the session idle since login
+			otherHandler.isCertificateValid(certificate);
+			assertEquals(ADMIN, otherHandler.getPrivilegeContext(certificate).getUsername());
+		} finally {
+			((DefaultPrivilegeHandler) handler).destroy();
+			((DefaultPrivilegeHandler) otherHandler).destroy();
+		}
+	}
+
+	@Test
+	public void testSignedCertificateIdleIsRevoked() throws Exception {
+		Map<String, String> parameterMap = new HashMap<String, String>();
+		parameterMap.put("sessionIdleTimeout", "1");
+		parameterMap.put("sessionAbsoluteTimeout", "60");
+		parameterMap.put("certificateSigningKey", "a-secret-key-shared-by-all-nodes");
+		PrivilegeHandler handler = initializeWithParameters(parameterMap);
+		try {
+			Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+
+			// let the session become idle, without waiting for the expiry wheel to evict it
+			certificate.setLastAccess(certificate.getLastAccess() - 1100L);
+			try {
+				handler.isCertificateValid(certificate);
+				fail("The idle session should have expired");
+			} catch (AccessDeniedException e) {
+				assertTrue(e.getMessage().contains("has expired"));
+			}
+
+			// the still valid signature must not restore the expired session
+			try {
+				handler.isCertificateValid(certificate);
+				fail("The expired session should not have been restored from its signature");
+			} catch (AccessDeniedException e) {
+				assertTrue(e.getMessage().contains("There is no session information"));
+			}
+		} finally {
+			((DefaultPrivilegeHandler) handler).destroy();
+		}
+	}
+
+	@Test
+	public void testSharedFileSessionStore() throws Exception {
+		PrivilegeContainerModel containerModel = readContainerModel();
+		containerModel.setSessionStoreClassName(FileSessionStore.class.getName());
+		Map<String, String> sessionStoreParameters = new HashMap<String, String>();
+		sessionStoreParameters.put("basePath", "./target/testSessions");
+		containerModel.setSessionStoreParameterMap(sessionStoreParameters);
+
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+		PrivilegeHandler otherHandler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+
+		// the session file contains the authentication token, thus only the owner may read it
+		File sessionFile = new File("./target/testSessions", certificate.getSessionId() + ".session");
+		assertTrue(sessionFile.isFile());
+		if (sessionFile.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(sessionFile.toPath());
+			assertFalse(permissions.contains(PosixFilePermission.GROUP_READ));
+			assertFalse(permissions.contains(PosixFilePermission.OTHERS_READ));
+		}
+
+		// the other handler restores the session from the shared store
+		otherHandler.isCertificateValid(certificate);
+		assertEquals(ADMIN, otherHandler.getPrivilegeContext(certificate).getUsername());
+
+		// the logout on the other handler removes the session from the shared store
+		assertTrue(otherHandler.invalidateSession(certificate));
+		assertTrue(!sessionFile.exists());
+	}
+
+	@Test
+	public void testCorruptSessionFileIsIgnored() throws Exception {
+		this.exception.expect(AccessDeniedException.class);
+		this.exception.expectMessage("There is no session information");
+
+		PrivilegeContainerModel containerModel = readContainerModel();
+		containerModel.setSessionStoreClassName(FileSessionStore.class.getName());
+		Map<String, String> sessionStoreParameters = new HashMap<String, String>();
+		sessionStoreParameters.put("basePath", "./target/testSessions");
+		containerModel.setSessionStoreParameterMap(sessionStoreParameters);
+
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+		PrivilegeHandler otherHandler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+
+		// a corrupt session file is deleted and the session is unknown, instead of failing with an internal error
+		File sessionFile = new File("./target/testSessions", certificate.getSessionId() + ".session");
+		byte[] bytes = Files.readAllBytes(sessionFile.toPath());
+		Files.write(sessionFile.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+		try {
+			otherHandler.isCertificateValid(certificate);
+		} finally {
+			assertFalse(sessionFile.exists());
+		}
+	}
+
+	@Test
+	public void testDisableUserInvalidatesSessions() throws Exception {
+		this.exception.expect(AccessDeniedException.class);
+
+		PrivilegeHandler handler = initializeWithParameters(new HashMap<String, String>());
+		Certificate adminCertificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		Set<String> roles = new HashSet<String>();
+		roles.add(ROLE_APP_USER);
+		UserRep userRep = new UserRep("4", TED, "Ted", "Newman", UserState.ENABLED, roles, null,
+				new HashMap<String, String>());
+		handler.addOrReplaceUser(adminCertificate, userRep, ArraysHelper.copyOf(PASS_TED));
+
+		Certificate certificate = handler.authenticate(TED, ArraysHelper.copyOf(PASS_TED));
+		handler.authenticate(TED, ArraysHelper.copyOf(PASS_TED));
+		assertEquals(2, handler.getActiveSessionCount(adminCertificate, TED));
+
+		// disabling the user invalidates all the user's sessions
+		handler.setUserState(adminCertificate, TED, UserState.DISABLED);
+		assertEquals(0, handler.getActiveSessionCount(adminCertificate, TED));
+		handler.isCertificateValid(certificate);
+	}
+
+	@Test
+	public void testMaxSessionsPerUser() throws Exception {
+		this.exception.expect(AccessDeniedException.class);
+
+		Map<String, String> parameterMap = new HashMap<String, String>();
+		parameterMap.put("maxSessionsPerUser", "2");
+		PrivilegeHandler handler = initializeWithParameters(parameterMap);
+		Certificate usedCertificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		Thread.sleep(5L);
+		Certificate unusedCertificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		Thread.sleep(5L);
+
+		// use the first session, so that the second session is the least recently used
+		handler.isCertificateValid(usedCertificate);
+		handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+
+		// the least recently used session was invalidated
+		assertEquals(2, handler.getActiveSessionCount(usedCertificate, ADMIN));
+		handler.isCertificateValid(usedCertificate);
+		handler.isCertificateValid(unusedCertificate);
+	}
+
+	@Test
+	public void testSessionDataLimit() throws Exception {
+		Map<String, String> parameterMap = new HashMap<String, String>();
+		parameterMap.put("maxSessionDataBytes", "1024");
+		PrivilegeHandler handler = initializeWithParameters(parameterMap);
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+
+		SessionDataMap sessionDataMap = (SessionDataMap) certificate.getSessionDataMap();
+		sessionDataMap.put("key", "value");
+		sessionDataMap.put("key", "otherValue");
+		assertEquals(sessionDataMap.getByteSize(), handler.getSessionDataBytes(certificate, ADMIN));
+		sessionDataMap.remove("key");
+		assertEquals(0L, sessionDataMap.getByteSize());
+
+		// a value near the limit may be replaced by a value of the same size
+		char[] chars = new char[440];
+		Arrays.fill(chars, 'a');
+		sessionDataMap.put("large", new String(chars));
+		Arrays.fill(chars, 'b');
+		sessionDataMap.put("large", new String(chars));
+		assertEquals(954L, sessionDataMap.getByteSize());
+
+		this.exception.expect(PrivilegeException.class);
+		this.exception.expectMessage("maximum of 1024 bytes");
+		chars = new char[512];
+		Arrays.fill(chars, 'c');
+		sessionDataMap.put("large", new String(chars));
+	}
+
+	@Test
+	public void testPrivilegeDecisionCache() throws Exception {
+		Map<String, String> parameterMap = new HashMap<String, String>();
+		parameterMap.put("privilegeDecisionCacheSize", "16");
+		PrivilegeHandler handler = initializeWithParameters(parameterMap);
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		PrivilegeContext privilegeContext = handler.getPrivilegeContext(certificate);
+
+		assertTrue(privilegeContext.isAllowed(new TestRestrictable()));
+		assertTrue(privilegeContext.isAllowed(new TestRestrictable()));
+		privilegeContext.validateAction(new TestRestrictable());
+		assertEquals(1L, privilegeContext.getDecisionCacheMisses());
+		assertEquals(2L, privilegeContext.getDecisionCacheHits());
+	}
+
+	@Test
+	public void testPrivilegeDecisionCacheChecksPrivilegeName() throws Exception {
+		Map<String, String> parameterMap = new HashMap<String, String>();
+		parameterMap.put("privilegeDecisionCacheSize", "16");
+		PrivilegeHandler handler = initializeWithParameters(parameterMap);
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		PrivilegeContext privilegeContext = handler.getPrivilegeContext(certificate);
+		privilegeContext.validateAction(new TestIdentifiedRestrictable());
+
+		// a cached decision must not be used for a restrictable referencing another privilege by name
+		this.exception.expect(PrivilegeException.class);
+		this.exception.expectMessage("but the restrictable is referencing privilege OtherPrivilege");
+		privilegeContext.validateAction(new TestIdentifiedRestrictable() {
+			@Override
+			public String getPrivilegeName() {
+				return "OtherPrivilege";
+			}
+		});
+	}
+
+	@Test
+	public void testPatternPrivilege() throws Exception {
+		PrivilegeContainerModel containerModel = readContainerModel();
+		containerModel.addPolicy("PatternPrivilege", "ch.eitchnet.privilege.policy.PatternPrivilege");
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		Set<String> denyList = new HashSet<String>();
+		denyList.add("/orders/secret*");
+		Set<String> allowList = new HashSet<String>();
+		allowList.add("/orders/*");
+		allowList.add("/users/?");
+		allowList.add("/reports/*/summary");
+		PrivilegeRep privilegeRep = new PrivilegeRep("PatternTest", "PatternPrivilege", false, denyList, allowList);
+		handler.addOrReplacePrivilegeOnRole(certificate, "AppUser", privilegeRep);
+		handler.invalidateSession(certificate);
+
+		certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		PrivilegeContext privilegeContext = handler.getPrivilegeContext(certificate);
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("PatternTest", "/orders/")));
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("PatternTest", "/orders/4711")));
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("PatternTest", "/orders/secret/4711")));
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("PatternTest", "/users/a")));
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("PatternTest", "/users/ab")));
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("PatternTest", "/reports/2013/summary")));
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("PatternTest", "/reports/2013/detail")));
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("PatternTest", "/invoices/4711")));
+	}
+
+	@Test
+	public void testRegexPrivilege() throws Exception {
+		PrivilegeContainerModel containerModel = readContainerModel();
+		containerModel.addPolicy("RegexPrivilege", "ch.eitchnet.privilege.policy.RegexPrivilege");
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		Set<String> denyList = new HashSet<String>();
+		denyList.add("T9[0-9]{2}");
+		Set<String> allowList = new HashSet<String>();
+		allowList.add("T[0-9]{3}");
+		allowList.add("(ab)\\1");
+		PrivilegeRep privilegeRep = new PrivilegeRep("RegexTest", "RegexPrivilege", false, denyList, allowList);
+		handler.addOrReplacePrivilegeOnRole(certificate, "AppUser", privilegeRep);
+		handler.invalidateSession(certificate);
+
+		certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		PrivilegeContext privilegeContext = handler.getPrivilegeContext(certificate);
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("RegexTest", "T123")));
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("RegexTest", "T1234")));
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("RegexTest", "T923")));
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("RegexTest", "abab")));
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("RegexTest", "abba")));
+	}
+
+	@Test
+	public void testRegexPrivilegeNotCombinableExpressions() throws Exception {
+		PrivilegeContainerModel containerModel = readContainerModel();
+		containerModel.addPolicy("RegexPrivilege", "ch.eitchnet.privilege.policy.RegexPrivilege");
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+
+		// these expressions are valid on their own, but not in a single alternation
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		Set<String> allowList = new HashSet<String>();
+		allowList.add("(?<code>A[0-9])");
+		allowList.add("(?<code>B[0-9])");
+		allowList.add("\\QX.Y");
+		allowList.add("(?x) C [0-9] # a comment");
+		allowList.add("D[0-9]");
+		PrivilegeRep privilegeRep = new PrivilegeRep("RegexTest", "RegexPrivilege", false, new HashSet<String>(),
+				allowList);
+		handler.addOrReplacePrivilegeOnRole(certificate, "AppUser", privilegeRep);
+		handler.invalidateSession(certificate);
+
+		certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		PrivilegeContext privilegeContext = handler.getPrivilegeContext(certificate);
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("RegexTest", "A1")));
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("RegexTest", "B2")));
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("RegexTest", "X.Y")));
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("RegexTest", "XaY")));
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("RegexTest", "C5")));
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("RegexTest", "D7")));
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("RegexTest", "D")));
+	}
+
+	@Test
+	public void testRegexPrivilegeInvalidExpression() throws Exception {
+		this.exception.expect(PrivilegeException.class);
+		this.exception.expectMessage("is not a valid regular expression");
+
+		PrivilegeContainerModel containerModel = readContainerModel();
+		containerModel.addPolicy("RegexPrivilege", "ch.eitchnet.privilege.policy.RegexPrivilege");
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		Set<String> allowList = new HashSet<String>();
+		allowList.add("T[0-9");
+		PrivilegeRep privilegeRep = new PrivilegeRep("RegexTest", "RegexPrivilege", false, new HashSet<String>(),
+				allowList);
+		handler.addOrReplacePrivilegeOnRole(certificate, "AppUser", privilegeRep);
+	}
+
+	@Test
+	public void testRangePrivilege() throws Exception {
+		PrivilegeContainerModel containerModel = readContainerModel();
+		containerModel.addPolicy("RangePrivilege", "ch.eitchnet.privilege.policy.RangePrivilege");
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		Set<String> denyList = new HashSet<String>();
+		denyList.add("500..599");
+		Set<String> allowList = new HashSet<String>();
+		allowList.add("0..1000");
+		allowList.add("5000..");
+		allowList.add("-42");
+		PrivilegeRep privilegeRep = new PrivilegeRep("RangeTest", "RangePrivilege", false, denyList, allowList);
+		handler.addOrReplacePrivilegeOnRole(certificate, "AppUser", privilegeRep);
+		handler.invalidateSession(certificate);
+
+		certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		PrivilegeContext privilegeContext = handler.getPrivilegeContext(certificate);
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("RangeTest", 0)));
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("RangeTest", 1000L)));
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("RangeTest", 1001)));
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("RangeTest", 550)));
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("RangeTest", 499.99d)));
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("RangeTest", 550.5d)));
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("RangeTest", Long.MAX_VALUE)));
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("RangeTest", -42)));
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("RangeTest", -41)));
+	}
+
+	@Test
+	public void testPrivilegeCopiesDenyList() throws Exception {
+		Set<String> denyList = new HashSet<String>();
+		denyList.add("denied");
+		PrivilegeRep privilegeRep = new PrivilegeRep("DenyListCopy", "DefaultPrivilege", false, denyList,
+				new HashSet<String>(Arrays.asList("allowed", "later")));
+		IPrivilege privilege = new PrivilegeImpl(privilegeRep);
+
+		// later changes to the given list must not change the privilege
+		denyList.add("later");
+		assertFalse(privilege.getDenyList().contains("later"));
+		assertEquals(1, privilege.getDenyList().size());
+	}
+
+	@Test
+	public void testRoleInheritance() throws Exception {
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(readContainerModel());
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+
+		Map<String, PrivilegeRep> parentPrivileges = new HashMap<String, PrivilegeRep>();
+		parentPrivileges.put("ParentPrivilege", new PrivilegeRep("ParentPrivilege", "DefaultPrivilege", true,
+				new HashSet<String>(), new HashSet<String>()));
+		parentPrivileges.put("SharedPrivilege", new PrivilegeRep("SharedPrivilege", "DefaultPrivilege", true,
+				new HashSet<String>(), new HashSet<String>()));
+		handler.addOrReplaceRole(certificate, new RoleRep("ParentRole", parentPrivileges));
+
+		Map<String, PrivilegeRep> childPrivileges = new HashMap<String, PrivilegeRep>();
+		childPrivileges.put("SharedPrivilege", new PrivilegeRep("SharedPrivilege", "DefaultPrivilege", false,
+				new HashSet<String>(), new HashSet<String>(Arrays.asList("child"))));
+		handler.addOrReplaceRole(certificate,
+				new RoleRep("ChildRole", new HashSet<String>(Arrays.asList("ParentRole")), childPrivileges));
+		handler.addRoleToUser(certificate, ADMIN, "ChildRole");
+		handler.invalidateSession(certificate);
+
+		certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		PrivilegeContext privilegeContext = handler.getPrivilegeContext(certificate);
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("ParentPrivilege", "any")));
+
+		// the privilege of the child role takes precedence over the inherited privilege
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("SharedPrivilege", "child")));
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("SharedPrivilege", "parent")));
+
+		// the parent role may not extend its child
+		try {
+			handler.addOrReplaceRole(certificate,
+					new RoleRep("ParentRole", new HashSet<String>(Arrays.asList("ChildRole")), parentPrivileges));
+			fail("A cycle in the role hierarchy should have been rejected");
+		} catch (PrivilegeException e) {
+			assertTrue(e.getMessage().contains("extends itself"));
+		}
+
+		// the parent role may not be removed while it is extended
+		try {
+			handler.removeRole(certificate, "ParentRole");
+			fail("Removing an extended role should have been rejected");
+		} catch (PrivilegeException e) {
+			assertTrue(e.getMessage().contains("does not exist"));
+		}
+		assertTrue(handler.getRole("ParentRole") != null);
+	}
+
+	@Test
+	public void testRoleChangePropagatesToSessions() throws Exception {
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(readContainerModel());
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		PrivilegeContext privilegeContext = handler.getPrivilegeContext(certificate);
+		assertFalse(privilegeContext.hasPrivilege("LivePrivilege"));
+
+		// the existing context sees the new privilege without logging in again
+		PrivilegeRep privilegeRep = new PrivilegeRep("LivePrivilege", "DefaultPrivilege", true,
+				new HashSet<String>(), new HashSet<String>());
+		handler.addOrReplacePrivilegeOnRole(certificate, "AppUser", privilegeRep);
+		assertTrue(privilegeContext.isAllowed(new TestValueRestrictable("LivePrivilege", "value")));
+		assertTrue(handler.getPrivilegeContext(certificate) == privilegeContext);
+
+		handler.removePrivilegeFromRole(certificate, "AppUser", "LivePrivilege");
+		assertFalse(privilegeContext.isAllowed(new TestValueRestrictable("LivePrivilege", "value")));
+	}
+
+	@Test
+	public void testRoleSetViewSharedBetweenSessions() throws Exception {
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(readContainerModel());
+		Certificate certificate1 = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		Certificate certificate2 = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		PrivilegeContext privilegeContext1 = handler.getPrivilegeContext(certificate1);
+		PrivilegeContext privilegeContext2 = handler.getPrivilegeContext(certificate2);
+		RoleSetView roleSetView = privilegeContext1.getRoleSetView();
+		assertTrue(privilegeContext2.getRoleSetView() == roleSetView);
+
+		// after a change of a role, the sessions share the new view
+		PrivilegeRep privilegeRep = new PrivilegeRep("SharedViewPrivilege", "DefaultPrivilege", true,
+				new HashSet<String>(), new HashSet<String>());
+		handler.addOrReplacePrivilegeOnRole(certificate1, "AppUser", privilegeRep);
+		assertFalse(privilegeContext1.getRoleSetView() == roleSetView);
+		assertTrue(privilegeContext2.getRoleSetView() == privilegeContext1.getRoleSetView());
+		assertTrue(privilegeContext2.hasPrivilege("SharedViewPrivilege"));
+	}
+
+	@Test(timeout = 5000L)
+	public void testAuditLogStopsWithAbandonedEvent() throws Exception {
+		File auditFile = new File("./target/testAuditAbandoned.log");
+		if (auditFile.exists() && !auditFile.delete())
+			throw new RuntimeException("Could not delete audit file " + auditFile);
+
+		// while not running, an event which would have to wait for a free slot is dropped
+		AuditLog auditLog = new AuditLog(auditFile, 1, true, AuditLog.DEFAULT_MAX_FILE_SIZE, 1);
+		auditLog.record(AuditLog.Event.AUTHENTICATED, ADMIN, "1", null, null);
+		auditLog.record(AuditLog.Event.AUTHENTICATED, ADMIN, "2", null, null);
+		assertEquals(1L, auditLog.getDroppedEvents());
+
+		auditLog.start();
+		auditLog.stop();
+		assertEquals(1, Files.readAllLines(auditFile.toPath(), StandardCharsets.UTF_8).size());
+	}
+
+	@Test(timeout = 5000L)
+	public void testAuditLogRestartAfterDroppedEvent() throws Exception {
+		File auditFile = new File("./target/testAuditRestart.log");
+		if (auditFile.exists() && !auditFile.delete())
+			throw new RuntimeException("Could not delete audit file " + auditFile);
+
+		AuditLog auditLog = new AuditLog(auditFile, 1, true, AuditLog.DEFAULT_MAX_FILE_SIZE, 1);
+		auditLog.record(AuditLog.Event.AUTHENTICATED, ADMIN, "1", null, null);
+		auditLog.record(AuditLog.Event.AUTHENTICATED, ADMIN, "2", null, null);
+		auditLog.start();
+		auditLog.stop();
+
+		// a dropped event must not leave a slot behind on which the restarted writer waits forever
+		auditLog.record(AuditLog.Event.AUTHENTICATED, ADMIN, "3", null, null);
+		auditLog.start();
+		auditLog.record(AuditLog.Event.AUTHENTICATED, ADMIN, "4", null, null);
+		auditLog.stop();
+
+		assertEquals(1L, auditLog.getDroppedEvents());
+		assertEquals(3, Files.readAllLines(auditFile.toPath(), StandardCharsets.UTF_8).size());
+	}
+
+	@Test
+	public void testUserChangeOnlyOutdatesSessionsOfUser() throws Exception {
+		PrivilegeContainerModel containerModel = readContainerModel();
+		containerModel.setPersistenceHandlerClassName(CountingPersistenceHandler.class.getName());
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		Set<String> roles = new HashSet<String>();
+		roles.add(ROLE_APP_USER);
+		UserRep userRep = new UserRep("4", TED, "Ted", "Newman", UserState.ENABLED, roles, null,
+				new HashMap<String, String>());
+		handler.addOrReplaceUser(certificate, userRep, "ted12345".getBytes());
+		Certificate tedCertificate = handler.authenticate(TED, "ted12345".getBytes());
+
+		handler.setUserName(certificate, TED, "Ted", "Oldman");
+		CountingPersistenceHandler.resetCounts();
+
+		// the sessions of other users are still up to date, and the sessions of the user were rebuilt already
+		handler.isCertificateValid(certificate);
+		handler.isCertificateValid(tedCertificate);
+		assertEquals(0, CountingPersistenceHandler.getUserCount());
+		assertEquals("Oldman", handler.getPrivilegeContext(tedCertificate).getUserRep().getLastname());
+	}
+
+	@Test
+	public void testRoleChangeOnlyRefreshesSessionsOfRole() throws Exception {
+		PrivilegeContainerModel containerModel = readContainerModel();
+		containerModel.setPersistenceHandlerClassName(CountingPersistenceHandler.class.getName());
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		Set<String> roles = new HashSet<String>();
+		roles.add(ROLE_APP_USER);
+		UserRep userRep = new UserRep("4", TED, "Ted", "Newman", UserState.ENABLED, roles, null,
+				new HashMap<String, String>());
+		handler.addOrReplaceUser(certificate, userRep, "ted12345".getBytes());
+		Certificate tedCertificate = handler.authenticate(TED, "ted12345".getBytes());
+		PrivilegeContext tedContext = handler.getPrivilegeContext(tedCertificate);
+
+		// a role without sessions outdates the other sessions, which are only marked as up to date on their next use
+		handler.addOrReplaceRole(certificate, new RoleRep("UnusedRole", new HashMap<String, PrivilegeRep>()));
+		CountingPersistenceHandler.resetCounts();
+		handler.isCertificateValid(certificate);
+		handler.isCertificateValid(tedCertificate);
+		assertEquals(0, CountingPersistenceHandler.getUserCount());
+		assertTrue(handler.getPrivilegeContext(tedCertificate) == tedContext);
+
+		// the sessions of a changed role are refreshed right away
+		PrivilegeRep privilegeRep = new PrivilegeRep("RoleIndexPrivilege", "DefaultPrivilege", true,
+				new HashSet<String>(), new HashSet<String>());
+		handler.addOrReplacePrivilegeOnRole(certificate, ROLE_APP_USER, privilegeRep);
+		assertTrue(tedContext.hasPrivilege("RoleIndexPrivilege"));
+		handler.isCertificateValid(tedCertificate);
+		assertEquals(0, CountingPersistenceHandler.getUserCount());
+		assertTrue(handler.getPrivilegeContext(tedCertificate) == tedContext);
+	}
+
+	@Test
+	public void testAdminOperationReadsUserOnce() throws Exception {
+		PrivilegeContainerModel containerModel = readContainerModel();
+		containerModel.setPersistenceHandlerClassName(CountingPersistenceHandler.class.getName());
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+
+		// only the changed user is read, the admin check uses the session, even if the admin changes itself
+		CountingPersistenceHandler.resetCounts();
+		for (int i = 0; i < 5; i++) {
+			handler.setUserName(certificate, SYSTEM_USER_ADMIN, "System User", "Administrator " + i);
+		}
+		assertEquals(5, CountingPersistenceHandler.getUserCount());
+
+		CountingPersistenceHandler.resetCounts();
+		for (int i = 0; i < 5; i++) {
+			handler.setUserName(certificate, ADMIN, "Application", "Administrator " + i);
+		}
+		assertEquals(5, CountingPersistenceHandler.getUserCount());
+	}
+
+	@Test
+	public void testPrivilegeAdminFlagFollowsUserChanges() throws Exception {
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(readContainerModel());
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		PrivilegeContext privilegeContext = handler.getPrivilegeContext(certificate);
+		assertTrue(privilegeContext.isPrivilegeAdmin());
+		assertFalse(privilegeContext.isSystemUser());
+		handler.assertIsPrivilegeAdmin(certificate);
+
+		// once the role is removed, the session of the user is not an admin session anymore
+		handler.removeRoleFromUser(certificate, ADMIN, PrivilegeHandler.PRIVILEGE_ADMIN_ROLE);
+		assertFalse(handler.getPrivilegeContext(certificate).isPrivilegeAdmin());
+		this.exception.expect(AccessDeniedException.class);
+		this.exception.expectMessage("User does not have PrivilegeAdmin role!");
+		handler.assertIsPrivilegeAdmin(certificate);
+	}
+
+	@Test
+	public void testStatefulPolicyNotShared() throws Exception {
+		PrivilegeContainerModel containerModel = readContainerModel();
+		containerModel.addPolicy("TestStatefulPolicy", TestStatefulPolicy.class.getName());
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+		Certificate certificate1 = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		PrivilegeRep privilegeRep = new PrivilegeRep("StatefulPrivilege", "TestStatefulPolicy", true,
+				new HashSet<String>(), new HashSet<String>());
+		handler.addOrReplacePrivilegeOnRole(certificate1, ROLE_APP_USER, privilegeRep);
+		Certificate certificate2 = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+
+		// the sessions share their privileges, but every session has its own instance of the stateful policy
+		PrivilegeContext privilegeContext1 = handler.getPrivilegeContext(certificate1);
+		PrivilegeContext privilegeContext2 = handler.getPrivilegeContext(certificate2);
+		assertTrue(privilegeContext1.getRoleSetView() == privilegeContext2.getRoleSetView());
+		privilegeContext1.validateAction(new TestValueRestrictable("StatefulPrivilege", "value"));
+		privilegeContext2.validateAction(new TestValueRestrictable("StatefulPrivilege", "value"));
+	}
+
+	@Test
+	public void testSubclassOfDeterministicPolicyNotCached() throws Exception {
+		PrivilegeContainerModel containerModel = readContainerModel();
+		containerModel.getParameterMap().put("privilegeDecisionCacheSize", "16");
+		containerModel.addPolicy("TestSessionPolicy", TestSessionPolicy.class.getName());
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+		Certificate certificate1 = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		PrivilegeRep privilegeRep = new PrivilegeRep("SessionPrivilege", "TestSessionPolicy", true,
+				new HashSet<String>(), new HashSet<String>());
+		handler.addOrReplacePrivilegeOnRole(certificate1, ROLE_APP_USER, privilegeRep);
+		Certificate certificate2 = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		certificate2.getSessionDataMap().put(TestSessionPolicy.DENIED, "true");
+
+		// the sessions share their decision cache, but the grant of the first session must not be used for the second
+		PrivilegeContext privilegeContext1 = handler.getPrivilegeContext(certificate1);
+		PrivilegeContext privilegeContext2 = handler.getPrivilegeContext(certificate2);
+		assertTrue(privilegeContext1.getRoleSetView() == privilegeContext2.getRoleSetView());
+		privilegeContext1.validateAction(new TestValueRestrictable("SessionPrivilege", "value"));
+		try {
+			privilegeContext2.validateAction(new TestValueRestrictable("SessionPrivilege", "value"));
+			fail("The decision of the subclass should not have been cached");
+		} catch (AccessDeniedException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testIsAllowedUsesOverriddenValidateAction() throws Exception {
+		PrivilegeContainerModel containerModel = readContainerModel();
+		containerModel.addPolicy("TestSessionPolicy", TestSessionPolicy.class.getName());
+		PrivilegeHandler handler = PrivilegeInitializationHelper.initializeFromXml(containerModel);
+		Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+		PrivilegeRep privilegeRep = new PrivilegeRep("SessionPrivilege", "TestSessionPolicy", true,
+				new HashSet<String>(), new HashSet<String>());
+		handler.addOrReplacePrivilegeOnRole(certificate, ROLE_APP_USER, privilegeRep);
+		PrivilegeContext privilegeContext = handler.getPrivilegeContext(certificate);
+		TestValueRestrictable restrictable = new TestValueRestrictable("SessionPrivilege", "value");
+		assertTrue(privilegeContext.isAllowed(restrictable));
+
+		// the policy only overrides validateAction(), which must also decide for isAllowed() and filter()
+		certificate.getSessionDataMap().put(TestSessionPolicy.DENIED, "true");
+		assertFalse(privilegeContext.isAllowed(restrictable));
+		assertTrue(privilegeContext.filter(Arrays.asList(restrictable, restrictable)).isEmpty());
+	}
+
+	@Test
+	public void testSessionSnapshot() throws Exception {
+		File snapshotFile = new File("./target/testSessions.snapshot");
+		Map<String, String> parameterMap = new HashMap<String, String>();
+		parameterMap.put("sessionSnapshotFile", snapshotFile.getPath());
+		try {
+			PrivilegeHandler handler = initializeWithParameters(parameterMap);
+			Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+			((DefaultPrivilegeHandler) handler).destroy();
+
+			// after a restart the certificate is still valid
+			PrivilegeHandler restartedHandler = initializeWithParameters(parameterMap);
+			restartedHandler.isCertificateValid(certificate);
+			assertEquals(ADMIN, restartedHandler.getPrivilegeContext(certificate).getUsername());
+			((DefaultPrivilegeHandler) restartedHandler).destroy();
+		} finally {
+			if (snapshotFile.exists() && !snapshotFile.delete())
+				throw new RuntimeException("Could not delete snapshot file " + snapshotFile);
+		}
+	}
+
+	@Test
+	public void testSessionSnapshotKeepsUnusedSessions() throws Exception {
+		File snapshotFile = new File("./target/testSessions.snapshot");
+		Map<String, String> parameterMap = new HashMap<String, String>();
+		parameterMap.put("sessionSnapshotFile", snapshotFile.getPath());
+		try {
+			PrivilegeHandler handler = initializeWithParameters(parameterMap);
+			Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+			Certificate invalidatedCertificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+			((DefaultPrivilegeHandler) handler).destroy();
+
+			// the restored sessions are not used before the next restart, but one is invalidated
+			PrivilegeHandler restartedHandler = initializeWithParameters(parameterMap);
+			assertTrue(restartedHandler.invalidateSession(invalidatedCertificate));
+			((DefaultPrivilegeHandler) restartedHandler).destroy();
+
+			restartedHandler = initializeWithParameters(parameterMap);
+			restartedHandler.isCertificateValid(certificate);
+			try {
+				restartedHandler.isCertificateValid(invalidatedCertificate);
+				fail("The invalidated session should not have been written to the snapshot");
+			} catch (AccessDeniedException e) {
+				// expected
+			}
+			((DefaultPrivilegeHandler) restartedHandler).destroy();
+		} finally {
+			if (snapshotFile.exists() && !snapshotFile.delete())
+				throw new RuntimeException("Could not delete snapshot file " + snapshotFile);
+		}
+	}
+
+	@Test
+	public void testInvalidSessionSnapshotIsIgnored() throws Exception {
+		File snapshotFile = new File("./target/testSessions.snapshot");
+		Files.write(snapshotFile.toPath(), "not a snapshot".getBytes(StandardCharsets.UTF_8));
+
+		Map<String, String> parameterMap = new HashMap<String, String>();
+		parameterMap.put("sessionSnapshotFile", snapshotFile.getPath());
+		try {
+			PrivilegeHandler handler = initializeWithParameters(parameterMap);
+			Certificate certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+			handler.isCertificateValid(certificate);
+			((DefaultPrivilegeHandler) handler).destroy();
+
+			// a snapshot with a valid header, but a corrupt number of properties
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0x50525353);
+			out.writeInt(1);
+			out.writeInt(1);
+			out.writeUTF("1");
+			out.writeLong(System.currentTimeMillis());
+			out.writeLong(System.currentTimeMillis());
+			out.writeUTF(ADMIN);
+			out.writeBoolean(false);
+			out.writeBoolean(false);
+			out.writeUTF("token");
+			out.writeUTF("en");
+			out.writeUTF("");
+			out.writeUTF("");
+			out.writeInt(Integer.MAX_VALUE);
+			out.close();
+			Files.write(snapshotFile.toPath(), bytes.toByteArray());
+
+			handler = initializeWithParameters(parameterMap);
+			certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+			handler.isCertificateValid(certificate);
+			((DefaultPrivilegeHandler) handler).destroy();
+		} finally {
+			if (snapshotFile.exists() && !snapshotFile.delete())
+				throw new RuntimeException("Could not delete snapshot file " + snapshotFile);
+		}
+	}
+
+	@Test
+	public void testAuditLog() throws Exception {
+		File auditFile = new File("./target/testAudit.log");
+		if (auditFile.exists() && !auditFile.delete())
+			throw new RuntimeException("Could not delete audit file " + auditFile);
+
+		Map<String, String> parameterMap = new HashMap<String, String>();
+		parameterMap.put("auditLogFile", auditFile.getPath());
+		parameterMap.put("auditLogBufferSize", "16");
+		parameterMap.put("auditLogWhenFull", "block");
+		PrivilegeHandler handler = initializeWithParameters(parameterMap);
+		Certificate certificate;
+		try {
+			certificate = handler.authenticate(ADMIN, ArraysHelper.copyOf(PASS_ADMIN));
+			PrivilegeContext privilegeContext = handler.getPrivilegeContext(certificate);
+			privilegeContext.validateAction(new TestRestrictable());
+			try {
+				privilegeContext.validateAction(new TestValueRestrictable("UnknownPrivilege", "value"));
+				fail("Access to UnknownPrivilege should have been denied");
+			} catch (AccessDeniedException e) {
+				// expected
+			}
+			handler.invalidateSession(certificate);
+			try {
+				handler.authenticate(ADMIN, "wrong".getBytes());
+				fail("Authentication with a wrong password should have failed");
+			} catch (AccessDeniedException e) {
+				// expected
+			}
+		} finally {
+			((DefaultPrivilegeHandler) handler).destroy();
+		}
+
+		// all events were written on destroy, in the order in which they were recorded
+		List<String> lines = Files.readAllLines(auditFile.toPath(), StandardCharsets.UTF_8);
+		assertEquals(5, lines.size());
+		assertEquals("AUTHENTICATED", lines.get(0).split("\t")[1]);
+		assertEquals("ACCESS_GRANTED", lines.get(1).split("\t")[1]);
+		String[] denied = lines.get(2).split("\t");
+		assertEquals("ACCESS_DENIED", denied[1]);
+		assertEquals(ADMIN, denied[2]);
+		assertEquals(certificate.getSessionId(), denied[3]);
+		assertEquals("UnknownPrivilege", denied[4]);
+		assertEquals("value", denied[5]);
+		assertEquals("SESSION_INVALIDATED", lines.get(3).split("\t")[1]);
+		assertEquals("AUTHENTICATION_FAILED", lines.get(4).split("\t")[1]);
+	}
+
 	/**
 	 * This test performs multiple tests which are dependent on each other as the following is done:
 	 * <ul>
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import ch.eitchnet.privilege.handler.SessionRegistry;
+import ch.eitchnet.privilege.model.Certificate;
+import ch.eitchnet.privilege.model.IPrivilege;
+import ch.eitchnet.privilege.model.PrivilegeContext;
+import ch.eitchnet.privilege.model.RoleSetView;
+import ch.eitchnet.privilege.model.UserRep;
+import ch.eitchnet.privilege.model.UserState;
+import ch.eitchnet.privilege.policy.PrivilegePolicy;
+
+/**
+ * JUnit for the {@link SessionRegistry}, especially that the sessions and the indexes by username and by role stay
+ * consistent when sessions are added and removed concurrently
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+@SuppressWarnings("nls")
+public class SessionRegistryTest {
+
+	private static final int NR_OF_THREADS = 8;
+	private static final int NR_OF_SESSIONS = 2000;
+	private static final String[] USERNAMES = { "admin", "bob", "ted" };
+
+	private static final RoleSetView ROLE_SET_VIEW = new RoleSetView(new HashMap<String, IPrivilege>(),
+			new HashMap<String, PrivilegePolicy>(), 0);
+
+	private static PrivilegeContext newContext(long sessionKey, String username) {
+		return newContext(sessionKey, username, new HashSet<String>());
+	}
+
+	private static PrivilegeContext newContext(long sessionKey, String username, Set<String> roles) {
+		Certificate certificate = new Certificate(Long.toString(sessionKey), System.currentTimeMillis(), username,
+				"First", "Last", "token", null, null);
+		UserRep userRep = new UserRep(username, username, "First", "Last", UserState.ENABLED, roles, null,
+				new HashMap<String, String>());
+		return new PrivilegeContext(userRep, certificate, ROLE_SET_VIEW, 0L);
+	}
+
+	@Test
+	public void testGetSessionsByUsername() {
+		SessionRegistry sessionRegistry = new SessionRegistry(4);
+		PrivilegeContext adminContext = newContext(1L, "admin");
+		PrivilegeContext otherAdminContext = newContext(2L, "admin");
+		PrivilegeContext bobContext = newContext(3L, "bob");
+		sessionRegistry.put(adminContext);
+		sessionRegistry.put(otherAdminContext);
+		sessionRegistry.put(bobContext);
+
+		assertEquals(3, sessionRegistry.size());
+		assertEquals(new HashSet<PrivilegeContext>(Arrays.asList(adminContext, otherAdminContext)),
+				new HashSet<PrivilegeContext>(sessionRegistry.getSessions("admin")));
+		assertEquals(Arrays.asList(bobContext), sessionRegistry.getSessions("bob"));
+		assertTrue(sessionRegistry.getSessions("ted").isEmpty());
+
+		// replacing and removing a session updates the index
+		PrivilegeContext replacedContext = newContext(1L, "admin");
+		assertTrue(sessionRegistry.replace(adminContext, replacedContext));
+		assertTrue(sessionRegistry.remove(otherAdminContext));
+		assertEquals(Arrays.asList(replacedContext), sessionRegistry.getSessions("admin"));
+		assertEquals(replacedContext, sessionRegistry.remove("1"));
+		assertTrue(sessionRegistry.getSessions("admin").isEmpty());
+		assertNull(sessionRegistry.get("1"));
+	}
+
+	@Test
+	public void testGetSessionsByRole() {
+		SessionRegistry sessionRegistry = new SessionRegistry(4);
+		PrivilegeContext adminContext = newContext(1L, "admin", new HashSet<String>(Arrays.asList("Admin", "User")));
+		PrivilegeContext bobContext = newContext(2L, "bob", new HashSet<String>(Arrays.asList("User")));
+		sessionRegistry.put(adminContext);
+		sessionRegistry.put(bobContext);
+
+		assertEquals(Arrays.asList(adminContext), sessionRegistry.getRoleSessions("Admin"));
+		assertEquals(new HashSet<PrivilegeContext>(Arrays.asList(adminContext, bobContext)),
+				new HashSet<PrivilegeContext>(sessionRegistry.getRoleSessions("User")));
+		assertTrue(sessionRegistry.getRoleSessions("Guest").isEmpty());
+
+		// a replaced session is indexed by its new roles
+		PrivilegeContext replacedContext = newContext(1L, "admin", new HashSet<String>(Arrays.asList("Guest")));
+		assertTrue(sessionRegistry.replace(adminContext, replacedContext));
+		assertTrue(sessionRegistry.getRoleSessions("Admin").isEmpty());
+		assertEquals(Arrays.asList(bobContext), sessionRegistry.getRoleSessions("User"));
+		assertEquals(Arrays.asList(replacedContext), sessionRegistry.getRoleSessions("Guest"));
+
+		assertTrue(sessionRegistry.remove(bobContext));
+		assertTrue(sessionRegistry.getRoleSessions("User").isEmpty());
+	}
+
+	@Test
+	public void testConcurrentAddAndRemove() throws Exception {
+		final SessionRegistry sessionRegistry = new SessionRegistry(4);
+		final CountDownLatch start = new CountDownLatch(1);
+
+		// every thread adds its own sessions and removes every other one, while looking up the sessions by username
+		ExecutorService executor = Executors.newFixedThreadPool(NR_OF_THREADS);
+		List<Future<List<PrivilegeContext>>> futures = new ArrayList<Future<List<PrivilegeContext>>>();
+		try {
+			for (int t = 0; t < NR_OF_THREADS; t++) {
+				final int thread = t;
+				futures.add(executor.submit(new Callable<List<PrivilegeContext>>() {
+					@Override
+					public List<PrivilegeContext> call() throws Exception {
+						start.await();
+						List<PrivilegeContext> remaining = new ArrayList<PrivilegeContext>();
+						for (int i = 0; i < NR_OF_SESSIONS; i++) {
+							long sessionKey = (long) thread * NR_OF_SESSIONS + i;
+							String username = USERNAMES[i % USERNAMES.length];
+							PrivilegeContext privilegeContext = newContext(sessionKey, username);
+							assertNull(sessionRegistry.putIfAbsent(privilegeContext));
+							assertTrue(sessionRegistry.getSessions(username).contains(privilegeContext));
+
+							if (i % 2 == 0)
+								assertTrue(sessionRegistry.remove(privilegeContext));
+							else
+								remaining.add(privilegeContext);
+						}
+						return remaining;
+					}
+				}));
+			}
+			start.countDown();
+
+			Set<PrivilegeContext> expected = new HashSet<PrivilegeContext>();
+			for (Future<List<PrivilegeContext>> future : futures) {
+				expected.addAll(future.get());
+			}
+
+			// the registry and the index by username contain exactly the remaining sessions
+			assertEquals(expected.size(), sessionRegistry.size());
+			assertEquals(expected, new HashSet<PrivilegeContext>(sessionRegistry.getAll()));
+			Set<PrivilegeContext> indexed = new HashSet<PrivilegeContext>();
+			for (String username : USERNAMES) {
+				for (PrivilegeContext privilegeContext : sessionRegistry.getSessions(username)) {
+					assertEquals(username, privilegeContext.getUsername());
+					assertTrue(indexed.add(privilegeContext));
+				}
+			}
+			assertEquals(expected, indexed);
+
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testConcurrentRemoveOfLastSessionOfUser() throws Exception {
+		final SessionRegistry sessionRegistry = new SessionRegistry(4);
+
+		// the set of a user is removed when its last session is removed, which races with adding a new session
+		ExecutorService executor = Executors.newFixedThreadPool(NR_OF_THREADS);
+		try {
+			for (int i = 0; i < NR_OF_SESSIONS; i++) {
+				final PrivilegeContext removedContext = newContext(2L * i, "admin");
+				final PrivilegeContext addedContext = newContext(2L * i + 1, "admin");
+				sessionRegistry.put(removedContext);
+
+				final CountDownLatch start = new CountDownLatch(1);
+				Future<?> remove = executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						start.await();
+						return sessionRegistry.remove(removedContext);
+					}
+				});
+				Future<?> add = executor.submit(new Callable<PrivilegeContext>() {
+					@Override
+					public PrivilegeContext call() throws Exception {
+						start.await();
+						return sessionRegistry.put(addedContext);
+					}
+				});
+				start.countDown();
+				remove.get();
+				add.get();
+
+				assertEquals(Arrays.asList(addedContext), sessionRegistry.getSessions("admin"));
+				assertTrue(sessionRegistry.remove(addedContext));
+				assertTrue(sessionRegistry.getSessions("admin").isEmpty());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.test.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.eitchnet.privilege.handler.XmlPersistenceHandler;
+import ch.eitchnet.privilege.model.internal.User;
+
+/**
+ * {@link XmlPersistenceHandler} which counts how often a user is read, so that tests can verify that users are not
+ * read unnecessarily
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class CountingPersistenceHandler extends XmlPersistenceHandler {
+
+	private static final AtomicInteger getUserCount = new AtomicInteger();
+
+	/**
+	 * @return the number of users read since the last {@link #resetCounts()}
+	 */
+	public static int getUserCount() {
+		return getUserCount.get();
+	}
+
+	public static void resetCounts() {
+		getUserCount.set(0);
+	}
+
+	@Override
+	public User getUser(String username) {
+		getUserCount.incrementAndGet();
+		return super.getUser(username);
+	}
+}
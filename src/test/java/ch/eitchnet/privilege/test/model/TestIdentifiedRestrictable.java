@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.test.model;
+
+import ch.eitchnet.privilege.model.IdentifiedRestrictable;
+import ch.eitchnet.privilege.model.PrivilegeIds;
+
+/**
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ * 
+ */
+public class TestIdentifiedRestrictable implements IdentifiedRestrictable {
+
+	private static final int PRIVILEGE_ID = PrivilegeIds.idOf(TestRestrictable.class.getName());
+
+	/**
+	 * @see ch.eitchnet.privilege.model.IdentifiedRestrictable#getPrivilegeId()
+	 */
+	@Override
+	public int getPrivilegeId() {
+		return PRIVILEGE_ID;
+	}
+
+	/**
+	 * @see ch.eitchnet.privilege.model.Restrictable#getPrivilegeName()
+	 */
+	@Override
+	public String getPrivilegeName() {
+		return TestRestrictable.class.getName();
+	}
+
+	/**
+	 * @see ch.eitchnet.privilege.model.Restrictable#getPrivilegeValue()
+	 */
+	@Override
+	public Object getPrivilegeValue() {
+		return TestRestrictable.class.getName();
+	}
+}
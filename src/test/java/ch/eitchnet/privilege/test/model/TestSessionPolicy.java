@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.test.model;
+
+import ch.eitchnet.privilege.base.AccessDeniedException;
+import ch.eitchnet.privilege.model.IPrivilege;
+import ch.eitchnet.privilege.model.PrivilegeContext;
+import ch.eitchnet.privilege.model.Restrictable;
+import ch.eitchnet.privilege.policy.DefaultPrivilege;
+
+/**
+ * {@link DefaultPrivilege} which additionally denies access to sessions which have the session data
+ * {@link #DENIED}, i.e. whose decision depends on the session and may thus not be cached
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class TestSessionPolicy extends DefaultPrivilege {
+
+	/**
+	 * the key of the session data by which access is denied
+	 */
+	public static final String DENIED = "denied";
+
+	@Override
+	public void validateAction(PrivilegeContext ctx, IPrivilege privilege, Restrictable restrictable) {
+		if (ctx.getCertificate().getSessionDataMap().containsKey(DENIED))
+			throw new AccessDeniedException("Access denied by " + getClass().getSimpleName());
+		super.validateAction(ctx, privilege, restrictable);
+	}
+}
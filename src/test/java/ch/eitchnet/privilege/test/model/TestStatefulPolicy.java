@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.test.model;
+
+import ch.eitchnet.privilege.base.AccessDeniedException;
+import ch.eitchnet.privilege.base.PrivilegeException;
+import ch.eitchnet.privilege.model.IPrivilege;
+import ch.eitchnet.privilege.model.PrivilegeContext;
+import ch.eitchnet.privilege.model.Restrictable;
+import ch.eitchnet.privilege.policy.StatefulPolicy;
+
+/**
+ * {@link StatefulPolicy} which remembers the {@link PrivilegeContext} by which it was first used and fails if it is
+ * used by another {@link PrivilegeContext}, i.e. if it was shared
+ * 
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ */
+public class TestStatefulPolicy implements StatefulPolicy {
+
+	private PrivilegeContext context;
+
+	@Override
+	public void validateAction(PrivilegeContext context, IPrivilege privilege, Restrictable restrictable)
+			throws AccessDeniedException {
+		if (!isAllowed(context, privilege, restrictable))
+			throw new AccessDeniedException("Access denied by " + getClass().getSimpleName());
+	}
+
+	@Override
+	public synchronized boolean isAllowed(PrivilegeContext context, IPrivilege privilege, Restrictable restrictable)
+			throws PrivilegeException {
+		if (this.context == null)
+			this.context = context;
+		else if (this.context != context)
+			throw new PrivilegeException("The stateful policy is shared between contexts!");
+		return privilege.isAllAllowed();
+	}
+}
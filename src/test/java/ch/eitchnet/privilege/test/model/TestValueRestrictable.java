@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Robert von Burg <eitch@eitchnet.ch>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.eitchnet.privilege.test.model;
+
+import ch.eitchnet.privilege.model.Restrictable;
+
+/**
+ * @author Robert von Burg <eitch@eitchnet.ch>
+ * 
+ */
+public class TestValueRestrictable implements Restrictable {
+
+	private final String privilegeName;
+	private final Object privilegeValue;
+
+	public TestValueRestrictable(String privilegeName, Object privilegeValue) {
+		this.privilegeName = privilegeName;
+		this.privilegeValue = privilegeValue;
+	}
+
+	/**
+	 * @see ch.eitchnet.privilege.model.Restrictable#getPrivilegeName()
+	 */
+	@Override
+	public String getPrivilegeName() {
+		return this.privilegeName;
+	}
+
+	/**
+	 * @see ch.eitchnet.privilege.model.Restrictable#getPrivilegeValue()
+	 */
+	@Override
+	public Object getPrivilegeValue() {
+		return this.privilegeValue;
+	}
+}